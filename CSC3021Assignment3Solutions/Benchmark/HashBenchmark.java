@@ -0,0 +1,264 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Throughput benchmark for the Hash/Chain solutions.
+ * This class is compiled together with the Strategies directory and benchmarks one HashFactory strategy
+ * per run. run.sh runs every strategy in its own JVM so that the JIT profile of one strategy does not
+ * affect the next. Every measurement is preceded by warmup iterations so that the JIT has compiled the
+ * hot paths before any numbers are recorded.
+ *
+ * Strategies that do not support a concurrent resize() (the Q2, Q3 and Q4 Hash) ignore -resizeEvery.
+ */
+public class HashBenchmark {
+    private static HashFactory.Strategy strategy = HashFactory.DEFAULT_STRATEGY;
+    private static int[] threadCounts = {1, 2, 4, 8};
+    private static int num_keys = 100000;
+    private static int num_buckets = 1024;
+    private static ResizePolicy policy = ResizePolicy.FIXED;
+    private static boolean padded = false;
+    private static int getPercent = 80;
+    private static int addPercent = 10;
+    private static int resizeEvery = 0;
+    private static int warmupIterations = 3;
+    private static int measuredIterations = 5;
+    private static long iterationMillis = 1000;
+    private static int footprintEntries = 0;
+
+    /**
+     * Written to by every worker so that the JIT cannot remove the calls to get().
+     */
+    static volatile Object sink;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length == 1 && args[0].equals("-list")) {
+            // used by run.sh to benchmark every strategy
+            for (HashFactory.Strategy s : HashFactory.Strategy.values())
+                System.out.println(s.getName());
+            return;
+        }
+        parseArgs(args);
+        if (resizeEvery > 0 && !strategy.supportsConcurrentResize()) {
+            System.err.println(strategy.getName() + " does not support a concurrent resize, ignoring -resizeEvery");
+            resizeEvery = 0;
+        }
+        if (padded && !strategy.supportsPaddedBuckets()) {
+            System.err.println(strategy.getName() + " has no padded layout, ignoring -padded");
+            padded = false;
+        }
+        // padded runs are reported under their own name so they can be told apart from the plain ones
+        String name = strategy.getName() + (padded ? "+padded" : "");
+
+        if (footprintEntries > 0) {
+            reportFootprint(name);
+            return;
+        }
+
+        Integer[] keys = new Integer[num_keys];
+        for (int i = 0; i < num_keys; ++i)
+            keys[i] = i;
+
+        System.out.println("# strategy=" + name + " keys=" + num_keys + " buckets=" + num_buckets + " policy=" + policy
+                + " mix(get/add/remove)=" + getPercent + "/" + addPercent + "/" + (100 - getPercent - addPercent)
+                + " resizeEvery=" + resizeEvery + " warmup=" + warmupIterations + "x" + iterationMillis + "ms"
+                + " iterations=" + measuredIterations + "x" + iterationMillis + "ms");
+        System.out.println("strategy,threads,ops_per_sec,stddev");
+        for (int threads : threadCounts) {
+            ConcurrentHash<Integer, Integer> hash = newPopulatedHash(keys);
+            for (int i = 0; i < warmupIterations; ++i)
+                runIteration(hash, keys, threads);
+
+            double[] results = new double[measuredIterations];
+            for (int i = 0; i < measuredIterations; ++i)
+                results[i] = runIteration(hash, keys, threads);
+            double mean = 0;
+            for (double r : results)
+                mean += r;
+            mean /= results.length;
+            double variance = 0;
+            for (double r : results)
+                variance += (r - mean) * (r - mean);
+            double stddev = results.length > 1 ? Math.sqrt(variance / (results.length - 1)) : 0;
+            System.out.printf("%s,%d,%.0f,%.0f%n", name, threads, mean, stddev);
+        }
+    }
+
+    /**
+     * Half of the key range is inserted up front so that get() and remove() hit about as often as they miss.
+     */
+    private static ConcurrentHash<Integer, Integer> newPopulatedHash(Integer[] keys) {
+        ConcurrentHash<Integer, Integer> hash = HashFactory.create(strategy, num_buckets, policy, padded);
+        for (int i = 0; i < keys.length; i += 2)
+            hash.add(keys[i], keys[i]);
+        return hash;
+    }
+
+    /**
+     * Prints the heap the Hash takes per entry, in the manner of a JOL footprint: the used heap is measured
+     * after a forced collection once the empty Hash and the keys exist and again after every key is added,
+     * so the difference is only what the Hash allocates for its entries (nodes, locks, growth of the
+     * bucket array if the policy resizes it), not the keys and values themselves.
+     */
+    private static void reportFootprint(String name) {
+        Integer[] keys = new Integer[footprintEntries];
+        for (int i = 0; i < footprintEntries; ++i)
+            keys[i] = i;
+        ConcurrentHash<Integer, Integer> hash = HashFactory.create(strategy, num_buckets, policy, padded);
+        long before = usedHeap();
+        for (Integer key : keys)
+            hash.add(key, key);
+        long after = usedHeap();
+        System.out.println("strategy,entries,bytes_per_entry");
+        System.out.printf("%s,%d,%.1f%n", name, hash.size(), (double) (after - before) / footprintEntries);
+        sink = hash;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // a few rounds, until a collection no longer frees anything
+        for (int i = 0; i < 10; ++i) {
+            System.gc();
+            long now = runtime.totalMemory() - runtime.freeMemory();
+            if (now >= used)
+                break;
+            used = now;
+        }
+        return used;
+    }
+
+    /**
+     * Runs every worker for iterationMillis and returns the combined throughput in operations per second.
+     */
+    private static double runIteration(final ConcurrentHash<Integer, Integer> hash, final Integer[] keys, int threads)
+            throws InterruptedException {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] ops = new long[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final int id = t;
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                boolean resizer = id == 0 && resizeEvery > 0;
+                boolean grown = false;
+                long count = 0;
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                while (running.get()) {
+                    Integer key = keys[random.nextInt(keys.length)];
+                    int op = random.nextInt(100);
+                    if (op < getPercent) {
+                        sink = hash.get(key);
+                    } else if (op < getPercent + addPercent) {
+                        hash.add(key, key);
+                    } else {
+                        hash.remove(key);
+                    }
+                    count++;
+                    if (resizer && count % resizeEvery == 0) {
+                        // alternate between the configured size and double it so the table does not grow forever
+                        grown = !grown;
+                        hash.resize(grown ? num_buckets * 2 : num_buckets);
+                    }
+                }
+                ops[id] = count;
+            });
+            workers[t].start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(iterationMillis);
+        running.set(false);
+        for (Thread worker : workers)
+            worker.join();
+        long elapsed = System.nanoTime() - begin;
+
+        long total = 0;
+        for (long count : ops)
+            total += count;
+        return total * 1e9 / elapsed;
+    }
+
+    private static void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length)
+                usage("missing value for " + args[i]);
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-strategy":
+                    try {
+                        strategy = HashFactory.Strategy.forName(value);
+                    } catch (IllegalArgumentException e) {
+                        usage(e.getMessage());
+                    }
+                    break;
+                case "-threads":
+                    String[] parts = value.split(",");
+                    threadCounts = new int[parts.length];
+                    for (int j = 0; j < parts.length; ++j)
+                        threadCounts[j] = Integer.parseInt(parts[j].trim());
+                    break;
+                case "-keys":
+                    num_keys = Integer.parseInt(value);
+                    break;
+                case "-buckets":
+                    num_buckets = Integer.parseInt(value);
+                    break;
+                case "-policy":
+                    if (value.equals("fixed"))
+                        policy = ResizePolicy.FIXED;
+                    else if (value.equals("auto"))
+                        policy = ResizePolicy.DEFAULT;
+                    else
+                        usage("policy must be fixed or auto");
+                    break;
+                case "-mix":
+                    // get/add/remove percentages, e.g. 80/10/10
+                    String[] mix = value.split("/");
+                    if (mix.length != 3)
+                        usage("mix must be get/add/remove, e.g. 80/10/10");
+                    getPercent = Integer.parseInt(mix[0]);
+                    addPercent = Integer.parseInt(mix[1]);
+                    if (getPercent + addPercent + Integer.parseInt(mix[2]) != 100)
+                        usage("mix percentages must add up to 100");
+                    break;
+                case "-resizeEvery":
+                    resizeEvery = Integer.parseInt(value);
+                    break;
+                case "-warmup":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "-iterations":
+                    measuredIterations = Integer.parseInt(value);
+                    break;
+                case "-time":
+                    iterationMillis = Long.parseLong(value);
+                    break;
+                case "-padded":
+                    padded = Boolean.parseBoolean(value);
+                    break;
+                case "-footprint":
+                    footprintEntries = Integer.parseInt(value);
+                    break;
+                default:
+                    usage("unknown option " + args[i]);
+            }
+        }
+        if (num_keys < 1 || num_buckets < 1 || measuredIterations < 1)
+            usage("keys, buckets and iterations must be positive");
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("usage: java HashBenchmark -list | [-strategy name] [-threads 1,2,4,8] [-keys n] [-buckets n] [-policy fixed|auto]"
+                + " [-mix get/add/remove] [-resizeEvery ops] [-warmup n] [-iterations n] [-time ms] [-padded true|false]"
+                + " [-footprint entries]");
+        System.exit(1);
+    }
+}
@@ -0,0 +1,20 @@
+#!/bin/sh
+# Compiles HashBenchmark together with the Strategies directory and runs every strategy in its own JVM.
+# Any arguments are passed straight through to HashBenchmark, e.g.
+#   ./run.sh -threads 1,4,16 -mix 50/25/25 -buckets 64
+# Set STRATEGIES to benchmark a subset, e.g. STRATEGIES="coarse lazy" ./run.sh
+# Set JAVA_OPTS to pass options to the JVM, e.g. JAVA_OPTS="-Xmx2g" ./run.sh
+# Set PADDED="false true" to run each strategy with plain and then padded chains (see -padded).
+
+cd "$(dirname "$0")/.." || exit 1
+OUT=${OUT:-Benchmark/out}
+
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -nowarn -d "$OUT" Strategies/*.java Benchmark/HashBenchmark.java || exit 1
+STRATEGIES=${STRATEGIES:-$(java -cp "$OUT" HashBenchmark -list)}
+for strategy in $STRATEGIES; do
+    for padded in ${PADDED:-false}; do
+        java $JAVA_OPTS -cp "$OUT" HashBenchmark -strategy "$strategy" -padded "$padded" "$@" || exit 1
+    done
+done
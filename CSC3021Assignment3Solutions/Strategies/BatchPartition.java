@@ -0,0 +1,89 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Groups a batch of keys by the bucket they hash into, and sorts each group by hash code, the order the
+ * chains keep their nodes in. The batch is then handled one run at a time, a run being the positions
+ * from start to runEnd(start) that all belong to bucket(start), so a Hash can lock and walk each chain
+ * once for the whole batch.
+ * Buckets are worked out with Math.abs(hash % num_buckets), as bHash does in every chained Hash.
+ */
+final class BatchPartition {
+    private final int[] index;
+    private final int[] hash;
+    private final int[] bucket;
+
+    private BatchPartition(int[] hashes, int num_buckets) {
+        int n = hashes.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; ++i)
+            order[i] = i;
+        int[] buckets = new int[n];
+        for (int i = 0; i < n; ++i)
+            buckets[i] = Math.abs(hashes[i] % num_buckets);
+        // stable, so duplicate keys are applied in the order they were given
+        Arrays.sort(order, (a, b) -> buckets[a] != buckets[b]
+                ? Integer.compare(buckets[a], buckets[b])
+                : Integer.compare(hashes[a], hashes[b]));
+        index = new int[n];
+        hash = new int[n];
+        bucket = new int[n];
+        for (int i = 0; i < n; ++i) {
+            index[i] = order[i];
+            hash[i] = hashes[order[i]];
+            bucket[i] = buckets[order[i]];
+        }
+    }
+
+    static <K> BatchPartition ofKeys(List<K> keys, int num_buckets) {
+        int[] hashes = new int[keys.size()];
+        for (int i = 0; i < hashes.length; ++i)
+            hashes[i] = keys.get(i).hashCode();
+        return new BatchPartition(hashes, num_buckets);
+    }
+
+    static <K, V> BatchPartition ofEntries(List<KeyValue<K, V>> entries, int num_buckets) {
+        int[] hashes = new int[entries.size()];
+        for (int i = 0; i < hashes.length; ++i)
+            hashes[i] = entries.get(i).key.hashCode();
+        return new BatchPartition(hashes, num_buckets);
+    }
+
+    int size() {
+        return index.length;
+    }
+
+    // The bucket of the run starting at start.
+    int bucket(int start) {
+        return bucket[start];
+    }
+
+    // The position after the last one in the same bucket as start.
+    int runEnd(int start) {
+        int end = start + 1;
+        while (end < bucket.length && bucket[end] == bucket[start])
+            end++;
+        return end;
+    }
+
+    // The items of the batch at positions start to end, sorted by hash code.
+    <T> List<T> select(List<T> batch, int start, int end) {
+        List<T> run = new ArrayList<T>(end - start);
+        for (int i = start; i < end; ++i)
+            run.add(batch.get(index[i]));
+        return run;
+    }
+
+    // Puts the values found for the run starting at start back where their keys were in the batch.
+    <V> void scatter(List<V> found, List<V> values, int start) {
+        for (int i = 0; i < found.size(); ++i)
+            values.set(index[start + i], found.get(i));
+    }
+
+    // A list of size nulls for scatter to fill in.
+    static <V> List<V> nulls(int size) {
+        return new ArrayList<V>(Collections.<V>nCopies(size, null));
+    }
+}
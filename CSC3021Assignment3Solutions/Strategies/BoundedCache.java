@@ -0,0 +1,250 @@
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * A cache over any ConcurrentHash strategy that keeps the total weight of its entries near max_weight,
+ * evicting with CLOCK (second chance). The entries are kept in a circular list swept by a hand: an entry
+ * that has been read since the hand last passed it has its reference bit cleared and is passed over
+ * once more, and the first entry found with a clear bit is evicted.
+ * get() only sets the reference bit of the entry it finds, so lookups never take a lock. put() and
+ * remove() update the Hash and then queue the change to the list in a ChangeQueue, and whichever
+ * writer gets its lock applies every queued change and evicts; the others carry on. The weight may
+ * therefore be over max_weight for as long as changes are queued.
+ * An entry heavier than max_weight on its own is added and then evicted by the next sweep.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the cache.
+ * @param <V> This is the value. It will be associated with a key in the cache.
+ */
+public class BoundedCache<K, V> {
+    private final ConcurrentHash<K, Entry<K, V>> map;
+    private final long max_weight;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+
+    private final ChangeQueue changes = new ChangeQueue(this::evict);
+    // The clock, only used by the changes and evict(). hand is null when the cache is empty.
+    private Entry<K, V> hand;
+    private volatile long weighted_size;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * The value of a key in the Hash, and its place in the clock. A put() always adds a new Entry, so
+     * the eviction sweep can remove exactly the entry it chose with remove(key, entry).
+     */
+    private static final class Entry<K, V> {
+        final K key;
+        final V value;
+        final int weight;
+        // Set by get(), cleared by the sweep.
+        volatile boolean referenced;
+        // Set once the entry has left the Hash, so a queued link() does not put it back on the clock.
+        volatile boolean retired;
+        // The clock links, only used by the changes and evict().
+        Entry<K, V> prev, next;
+        boolean linked;
+
+        Entry(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * @param strategy - the Hash that holds the entries
+     * @param num_buckets - initial number of buckets of that Hash
+     * @param max_weight - the total weight the cache evicts down to
+     * @param weigher - the weight of an entry; put() and get(key, loader) throw IllegalArgumentException
+     *                if it is negative
+     */
+    public BoundedCache(HashFactory.Strategy strategy, int num_buckets, long max_weight,
+                        ToIntBiFunction<? super K, ? super V> weigher) {
+        if (max_weight < 0)
+            throw new IllegalArgumentException("max_weight must not be negative: " + max_weight);
+        this.map = HashFactory.create(strategy, num_buckets);
+        this.max_weight = max_weight;
+        this.weigher = weigher;
+    }
+
+    // A cache of at most max_entries entries.
+    public BoundedCache(HashFactory.Strategy strategy, int num_buckets, long max_entries) {
+        this(strategy, num_buckets, max_entries, (key, value) -> 1);
+    }
+
+    // Lookup value for key, null if it is not cached.
+    public V get(K key) {
+        Entry<K, V> e = map.get(key);
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        // only write when the bit changes, so hot entries do not keep invalidating each other's cache lines
+        if (!e.referenced)
+            e.referenced = true;
+        return e.value;
+    }
+
+    /**
+     * The value for key, loading it with loader if it is not cached. Nothing is cached if loader returns
+     * null. loader runs inside compute() of the Hash, so it must not use this cache. Only one loaded
+     * value is ever cached for a key, but loader may run more than once for it: threads that miss at the
+     * same time may each run it with the strategies whose compute() can retry the function, such as the
+     * lock-free ones, and only one of their results is kept.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null)
+            return value;
+        AtomicReference<Entry<K, V>> loaded = new AtomicReference<Entry<K, V>>();
+        Entry<K, V> e = map.computeIfAbsent(key, k -> {
+            V v = loader.apply(k);
+            loaded.set(v == null ? null : new Entry<K, V>(k, v, weigh(k, v)));
+            return loaded.get();
+        });
+        if (e == null)
+            return null;
+        if (e == loaded.get())
+            schedule(() -> link(e));
+        return e.value;
+    }
+
+    // Insert or replace value for key. Returns the previous value, or null.
+    public V put(K key, V value) {
+        Entry<K, V> entry = new Entry<K, V>(key, value, weigh(key, value));
+        AtomicReference<Entry<K, V>> previous = new AtomicReference<Entry<K, V>>();
+        map.compute(key, (k, old) -> {
+            previous.set(old);
+            return entry;
+        });
+        Entry<K, V> old = previous.get();
+        if (old != null)
+            retire(old);
+        schedule(() -> link(entry));
+        return old == null ? null : old.value;
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        AtomicReference<Entry<K, V>> removed = new AtomicReference<Entry<K, V>>();
+        map.compute(key, (k, old) -> {
+            removed.set(old);
+            return null;
+        });
+        Entry<K, V> old = removed.get();
+        if (old == null)
+            return false;
+        retire(old);
+        return true;
+    }
+
+    private int weigh(K key, V value) {
+        int weight = weigher.applyAsInt(key, value);
+        if (weight < 0)
+            throw new IllegalArgumentException("weigher returned a negative weight for " + key + ": " + weight);
+        return weight;
+    }
+
+    private void retire(Entry<K, V> e) {
+        e.retired = true;
+        schedule(() -> unlink(e));
+    }
+
+    private void schedule(Runnable change) {
+        changes.add(change);
+    }
+
+    // Applies the queued changes and evicts down to max_weight, waiting for another writer if need be.
+    public void cleanUp() {
+        changes.drainNow();
+    }
+
+    // Puts e just behind the hand, so it is the last entry the sweep comes to.
+    private void link(Entry<K, V> e) {
+        if (e.retired || e.linked)
+            return;
+        if (hand == null) {
+            e.prev = e;
+            e.next = e;
+            hand = e;
+        } else {
+            e.next = hand;
+            e.prev = hand.prev;
+            hand.prev.next = e;
+            hand.prev = e;
+        }
+        e.linked = true;
+        weighted_size += e.weight;
+    }
+
+    private void unlink(Entry<K, V> e) {
+        if (!e.linked)
+            return;
+        if (e.next == e) {
+            hand = null;
+        } else {
+            e.prev.next = e.next;
+            e.next.prev = e.prev;
+            if (hand == e)
+                hand = e.next;
+        }
+        e.prev = null;
+        e.next = null;
+        e.linked = false;
+        weighted_size -= e.weight;
+    }
+
+    /**
+     * Sweeps the hand round until the weight is back under max_weight. An entry that put() or remove()
+     * has already taken out of the Hash is dropped from the clock without counting as an eviction.
+     */
+    private void evict() {
+        while (weighted_size > max_weight && hand != null) {
+            Entry<K, V> e = hand;
+            hand = e.next;
+            if (e.referenced) {
+                e.referenced = false;
+                continue;
+            }
+            if (map.remove(e.key, e))
+                evictions.increment();
+            e.retired = true;
+            unlink(e);
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    // The total weight of the entries on the clock, which lags behind the Hash by the queued changes.
+    public long weightedSize() {
+        return weighted_size;
+    }
+
+    public long maxWeight() {
+        return max_weight;
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    // Hits over all lookups, 1 if there have not been any.
+    public double hitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+}
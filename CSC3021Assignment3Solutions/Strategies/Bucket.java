@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * One bucket (chain) of a hash table. Each Chain from the solution directories implements
+ * this interface, which lets any Hash be built from any of the chain synchronization strategies.
+ * Every chain of a table is created with the same LongAdder and increments or decrements it whenever
+ * it actually inserts or unlinks a node, so the table knows its size without walking the chains.
+ */
+public interface Bucket<K, V> {
+    // Insert value for key. Returns true if a new node was added.
+    boolean add(K key, V value);
+
+    // Lookup value for key, null if the key is not present.
+    V get(K key);
+
+    // Remove key/value pair. Returns true if a node was removed.
+    boolean remove(K key);
+
+    /**
+     * Atomically replaces the value for key with remapping.apply(key, current value or null), and
+     * removes the entry (or does not add one) if that returns null. Returns the new value.
+     * The node is found once and the function applied under the same locks as add() and remove();
+     * a lock-free chain may apply the function again if it loses a race.
+     */
+    V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping);
+
+    // Number of nodes in this chain, found by walking it.
+    int size();
+
+    /**
+     * Batch versions of add, get and remove, for keys that all belong to this chain and are sorted by
+     * hash code (ascending). These defaults call add, get and remove once per key; chains guarded by a
+     * single lock override them to take it once and insert, find or unlink every key in one walk.
+     * Returns the number of entries added.
+     */
+    default int addAll(List<KeyValue<K, V>> sorted) {
+        int added = 0;
+        for (KeyValue<K, V> kv : sorted)
+            if (add(kv.key, kv.value))
+                added++;
+        return added;
+    }
+
+    // Values for the sorted keys, in the same order, null for keys that are not present.
+    default List<V> getAll(List<K> sorted) {
+        List<V> values = new ArrayList<V>(sorted.size());
+        for (K key : sorted)
+            values.add(get(key));
+        return values;
+    }
+
+    // Returns the number of entries removed.
+    default int removeAll(List<K> sorted) {
+        int removed = 0;
+        for (K key : sorted)
+            if (remove(key))
+                removed++;
+        return removed;
+    }
+
+    Iterator<KeyValue<K, V>> iterator();
+
+    /**
+     * The entries of this chain, copied so that they can be read while other threads change it. The
+     * default copies through iterator(), which is enough for chains that publish their nodes through
+     * volatile or atomic references; chains whose fields are guarded by a lock copy while holding it.
+     */
+    default Iterator<KeyValue<K, V>> snapshot() {
+        List<KeyValue<K, V>> entries = new ArrayList<KeyValue<K, V>>();
+        Iterator<KeyValue<K, V>> iter = iterator();
+        while (iter.hasNext())
+            entries.add(iter.next());
+        return entries.iterator();
+    }
+}
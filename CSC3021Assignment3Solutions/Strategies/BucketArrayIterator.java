@@ -0,0 +1,36 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the entries of every bucket in an array of buckets, one bucket after the other.
+ * Each bucket is copied with snapshot() when the iterator reaches it, so the buckets may be modified
+ * while it runs; it sees each bucket as it was when copied.
+ */
+class BucketArrayIterator<K, V> implements Iterator<KeyValue<K, V>> {
+    private final Bucket<K, V>[] buckets;
+    private int index;
+    private Iterator<KeyValue<K, V>> current;
+
+    BucketArrayIterator(Bucket<K, V>[] buckets) {
+        this.buckets = buckets;
+        this.index = 0;
+        this.current = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (current == null || !current.hasNext()) {
+            if (index >= buckets.length)
+                return false;
+            current = buckets[index++].snapshot();
+        }
+        return true;
+    }
+
+    @Override
+    public KeyValue<K, V> next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return current.next();
+    }
+}
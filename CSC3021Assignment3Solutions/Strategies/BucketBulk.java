@@ -0,0 +1,276 @@
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * The bulk operations of a Hash built from buckets. The bucket array is split into ranges that are
+ * handled by tasks in the common ForkJoinPool, and each task walks the entries of its buckets one
+ * bucket after the other. How the entries of a single bucket are read is up to the Hash (entries),
+ * so a Hash whose chains are not thread-safe can copy each bucket under its lock.
+ * The operations are weakly consistent, as the iterator of the same Hash is: an entry added or removed
+ * while they run may or may not be seen.
+ * parallelismThreshold follows ConcurrentHashMap: the operation runs on the calling thread if the table
+ * holds fewer entries than that, and otherwise each task is left with at least that many entries.
+ * Long.MAX_VALUE therefore never forks and 1 splits as far as the pool's parallelism is worth it.
+ * spliterator() splits the same bucket ranges for streams.
+ */
+final class BucketBulk<K, V> {
+    private final int num_buckets;
+    private final IntFunction<Iterator<KeyValue<K, V>>> entries;
+    private final long size;
+
+    /**
+     * @param num_buckets - the number of buckets to walk
+     * @param entries - the entries of bucket i
+     * @param size - the number of entries, used to decide how far to split the buckets
+     */
+    BucketBulk(int num_buckets, IntFunction<Iterator<KeyValue<K, V>>> entries, long size) {
+        this.num_buckets = num_buckets;
+        this.entries = entries;
+        this.size = size;
+    }
+
+    /**
+     * Number of buckets below which a range is not split any further, 0 if the operation should not
+     * fork at all.
+     */
+    private int leafBuckets(long parallelismThreshold) {
+        if (num_buckets <= 1 || size < parallelismThreshold)
+            return 0;
+        // a few tasks per thread evens out the buckets that are longer than the rest
+        long byPool = num_buckets / (4L * ForkJoinPool.getCommonPoolParallelism());
+        long byThreshold = size == 0 ? num_buckets : parallelismThreshold * num_buckets / size;
+        long leaf = Math.max(1, Math.max(byPool, byThreshold));
+        return leaf >= num_buckets ? 0 : (int) leaf;
+    }
+
+    void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+        int leaf = leafBuckets(parallelismThreshold);
+        if (leaf == 0)
+            forEachIn(0, num_buckets, action);
+        else
+            new ForEachTask(null, 0, num_buckets, leaf, action).invoke();
+    }
+
+    private void forEachIn(int lo, int hi, BiConsumer<? super K, ? super V> action) {
+        for (int i = lo; i < hi; ++i) {
+            Iterator<KeyValue<K, V>> iter = entries.apply(i);
+            while (iter.hasNext()) {
+                KeyValue<K, V> kv = iter.next();
+                action.accept(kv.key, kv.value);
+            }
+        }
+    }
+
+    /**
+     * Forks the upper half of its range until the range is small enough, then walks what is left.
+     * The root completes once every forked task has.
+     */
+    private final class ForEachTask extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final int lo, hi, leaf;
+        private final BiConsumer<? super K, ? super V> action;
+
+        ForEachTask(CountedCompleter<?> parent, int lo, int hi, int leaf, BiConsumer<? super K, ? super V> action) {
+            super(parent);
+            this.lo = lo;
+            this.hi = hi;
+            this.leaf = leaf;
+            this.action = action;
+        }
+
+        public void compute() {
+            int h = hi;
+            while (h - lo > leaf) {
+                int mid = (lo + h) >>> 1;
+                addToPendingCount(1);
+                new ForEachTask(this, mid, h, leaf, action).fork();
+                h = mid;
+            }
+            forEachIn(lo, h, action);
+            propagateCompletion();
+        }
+    }
+
+    /**
+     * The first non-null result of searchFunction, or null if there is none. Which entry is found first
+     * is not defined when the search runs in parallel. Every task stops as soon as any of them finds one.
+     */
+    <U> U search(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        AtomicReference<U> result = new AtomicReference<U>();
+        int leaf = leafBuckets(parallelismThreshold);
+        if (leaf == 0)
+            searchIn(0, num_buckets, searchFunction, result);
+        else
+            new SearchTask<U>(null, 0, num_buckets, leaf, searchFunction, result).invoke();
+        return result.get();
+    }
+
+    private <U> void searchIn(int lo, int hi, BiFunction<? super K, ? super V, ? extends U> searchFunction,
+                              AtomicReference<U> result) {
+        for (int i = lo; i < hi && result.get() == null; ++i) {
+            Iterator<KeyValue<K, V>> iter = entries.apply(i);
+            while (iter.hasNext()) {
+                KeyValue<K, V> kv = iter.next();
+                U u = searchFunction.apply(kv.key, kv.value);
+                if (u != null) {
+                    result.compareAndSet(null, u);
+                    return;
+                }
+            }
+        }
+    }
+
+    private final class SearchTask<U> extends CountedCompleter<Void> {
+        private static final long serialVersionUID = 1L;
+        private final int lo, hi, leaf;
+        private final BiFunction<? super K, ? super V, ? extends U> searchFunction;
+        private final AtomicReference<U> result;
+
+        SearchTask(CountedCompleter<?> parent, int lo, int hi, int leaf,
+                   BiFunction<? super K, ? super V, ? extends U> searchFunction, AtomicReference<U> result) {
+            super(parent);
+            this.lo = lo;
+            this.hi = hi;
+            this.leaf = leaf;
+            this.searchFunction = searchFunction;
+            this.result = result;
+        }
+
+        public void compute() {
+            int h = hi;
+            while (h - lo > leaf && result.get() == null) {
+                int mid = (lo + h) >>> 1;
+                addToPendingCount(1);
+                new SearchTask<U>(this, mid, h, leaf, searchFunction, result).fork();
+                h = mid;
+            }
+            searchIn(lo, h, searchFunction, result);
+            propagateCompletion();
+        }
+    }
+
+    /**
+     * Combines transformer(key, value) of every entry with reducer, skipping entries for which the
+     * transformer returns null. Returns null if there are none left. reducer should be associative,
+     * since the order in which the entries are combined depends on how the buckets were split.
+     */
+    <U> U mapReduce(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> transformer,
+                    BinaryOperator<U> reducer) {
+        int leaf = leafBuckets(parallelismThreshold);
+        if (leaf == 0)
+            return mapReduceIn(0, num_buckets, transformer, reducer);
+        return new MapReduceTask<U>(0, num_buckets, leaf, transformer, reducer).invoke();
+    }
+
+    private <U> U mapReduceIn(int lo, int hi, BiFunction<? super K, ? super V, ? extends U> transformer,
+                              BinaryOperator<U> reducer) {
+        U r = null;
+        for (int i = lo; i < hi; ++i) {
+            Iterator<KeyValue<K, V>> iter = entries.apply(i);
+            while (iter.hasNext()) {
+                KeyValue<K, V> kv = iter.next();
+                U u = transformer.apply(kv.key, kv.value);
+                if (u != null)
+                    r = r == null ? u : reducer.apply(r, u);
+            }
+        }
+        return r;
+    }
+
+    private final class MapReduceTask<U> extends RecursiveTask<U> {
+        private static final long serialVersionUID = 1L;
+        private final int lo, hi, leaf;
+        private final BiFunction<? super K, ? super V, ? extends U> transformer;
+        private final BinaryOperator<U> reducer;
+
+        MapReduceTask(int lo, int hi, int leaf, BiFunction<? super K, ? super V, ? extends U> transformer,
+                      BinaryOperator<U> reducer) {
+            this.lo = lo;
+            this.hi = hi;
+            this.leaf = leaf;
+            this.transformer = transformer;
+            this.reducer = reducer;
+        }
+
+        protected U compute() {
+            if (hi - lo <= leaf)
+                return mapReduceIn(lo, hi, transformer, reducer);
+            int mid = (lo + hi) >>> 1;
+            MapReduceTask<U> right = new MapReduceTask<U>(mid, hi, leaf, transformer, reducer);
+            right.fork();
+            U l = new MapReduceTask<U>(lo, mid, leaf, transformer, reducer).compute();
+            U r = right.join();
+            if (l == null)
+                return r;
+            return r == null ? l : reducer.apply(l, r);
+        }
+    }
+
+    /**
+     * A Spliterator over every bucket, which splits off the upper half of the buckets it has not
+     * started on yet. It reports CONCURRENT and NONNULL, and estimates the entries of a range from
+     * the size of the table, assuming they are spread evenly over the buckets.
+     */
+    Spliterator<KeyValue<K, V>> spliterator() {
+        return new BucketSpliterator(0, num_buckets, size);
+    }
+
+    private final class BucketSpliterator implements Spliterator<KeyValue<K, V>> {
+        private int lo, hi;
+        private long estimate;
+        // The entries of bucket lo - 1, once tryAdvance has started on it.
+        private Iterator<KeyValue<K, V>> current;
+
+        BucketSpliterator(int lo, int hi, long estimate) {
+            this.lo = lo;
+            this.hi = hi;
+            this.estimate = estimate;
+        }
+
+        public boolean tryAdvance(Consumer<? super KeyValue<K, V>> action) {
+            while (current == null || !current.hasNext()) {
+                if (lo >= hi)
+                    return false;
+                current = entries.apply(lo++);
+            }
+            action.accept(current.next());
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super KeyValue<K, V>> action) {
+            if (current != null)
+                current.forEachRemaining(action);
+            current = null;
+            for (; lo < hi; ++lo)
+                entries.apply(lo).forEachRemaining(action);
+        }
+
+        public Spliterator<KeyValue<K, V>> trySplit() {
+            if (hi - lo < 2)
+                return null;
+            int mid = (lo + hi) >>> 1;
+            long half = estimate >>> 1;
+            BucketSpliterator upper = new BucketSpliterator(mid, hi, half);
+            hi = mid;
+            estimate -= half;
+            return upper;
+        }
+
+        public long estimateSize() {
+            return estimate;
+        }
+
+        public int characteristics() {
+            return CONCURRENT | NONNULL;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * The Hash used by Q2, Q3 and Q4. It does no locking of its own and relies on each chain being
+ * thread-safe. resize() is not synchronized, so it must not run concurrently with other operations.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the chain.
+ * @param <V> This is the value. It will be associated with a key in the chain.
+ */
+public class ChainedHash<K, V> implements ConcurrentHash<K, V> {
+    private final Function<LongAdder, Bucket<K, V>> newBucket;
+    private int num_buckets;
+    private Bucket<K, V>[] buckets;
+    /**
+     * Shared by every chain in buckets. resize() builds the new chains with a new counter.
+     */
+    private LongAdder count;
+
+    public ChainedHash(int num_buckets_, Function<LongAdder, Bucket<K, V>> newBucket) {
+        this.newBucket = newBucket;
+        num_buckets = num_buckets_;
+        count = new LongAdder();
+        buckets = newBucketArray(num_buckets, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Bucket<K, V>[] newBucketArray(int n, LongAdder counter) {
+        Bucket<K, V>[] array = (Bucket<K, V>[]) new Bucket[n];
+        for (int i = 0; i < n; ++i)
+            array[i] = newBucket.apply(counter);
+        return array;
+    }
+
+    public int getArraySize() {
+        return num_buckets;
+    }
+
+    // This method is required only for Q6 and may
+    // be ignored for Q1-Q5.
+    public void resize(int new_num_buckets) {
+        Bucket<K, V>[] old_buckets = buckets;
+        int old_num_buckets = num_buckets;
+
+        num_buckets = new_num_buckets;
+        LongAdder new_count = new LongAdder();
+        buckets = newBucketArray(num_buckets, new_count);
+
+        // Iterate and rehash
+        for (int i = 0; i < old_num_buckets; ++i) {
+            Iterator<KeyValue<K, V>> iter = old_buckets[i].iterator();
+            while (iter.hasNext()) {
+                KeyValue<K, V> kv = iter.next();
+                add(kv.key, kv.value);
+            }
+        }
+        count = new_count;
+    }
+
+    private int bHash(int hash) {
+        return Math.abs(hash % num_buckets);
+    }
+
+    public boolean add(K key, V value) {
+        int bhash = bHash(key.hashCode());
+        return buckets[bhash].add(key, value);
+    }
+
+    public V get(K key) {
+        int bhash = bHash(key.hashCode());
+        return buckets[bhash].get(key);
+    }
+
+    public boolean remove(K key) {
+        int bhash = bHash(key.hashCode());
+        return buckets[bhash].remove(key);
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int bhash = bHash(key.hashCode());
+        return buckets[bhash].compute(key, remapping);
+    }
+
+    /**
+     * The batch is grouped by bucket, so each chain is walked once for all of its keys.
+     */
+    public int addAll(List<KeyValue<K, V>> entries) {
+        Bucket<K, V>[] b = buckets;
+        BatchPartition p = BatchPartition.ofEntries(entries, b.length);
+        int added = 0;
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            added += b[p.bucket(start)].addAll(p.select(entries, start, end));
+        }
+        return added;
+    }
+
+    public List<V> getAll(List<K> keys) {
+        Bucket<K, V>[] b = buckets;
+        BatchPartition p = BatchPartition.ofKeys(keys, b.length);
+        List<V> values = BatchPartition.nulls(keys.size());
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            p.scatter(b[p.bucket(start)].getAll(p.select(keys, start, end)), values, start);
+        }
+        return values;
+    }
+
+    public int removeAll(List<K> keys) {
+        Bucket<K, V>[] b = buckets;
+        BatchPartition p = BatchPartition.ofKeys(keys, b.length);
+        int removed = 0;
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            removed += b[p.bucket(start)].removeAll(p.select(keys, start, end));
+        }
+        return removed;
+    }
+
+    /**
+     * Each bucket is copied with snapshot(), which holds the chain's lock while it copies if its nodes
+     * are only safe to read under it.
+     */
+    private BucketBulk<K, V> bulk() {
+        Bucket<K, V>[] b = buckets;
+        return new BucketBulk<K, V>(b.length, i -> b[i].snapshot(), count.sum());
+    }
+
+    public void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+        bulk().forEach(parallelismThreshold, action);
+    }
+
+    public <U> U search(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        return bulk().search(parallelismThreshold, searchFunction);
+    }
+
+    public <U> U mapReduce(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> transformer,
+                           BinaryOperator<U> reducer) {
+        return bulk().mapReduce(parallelismThreshold, transformer, reducer);
+    }
+
+    public Spliterator<KeyValue<K, V>> spliterator() {
+        return bulk().spliterator();
+    }
+
+    public int size() {
+        return (int) count.sum();
+    }
+
+    public Iterator<KeyValue<K, V>> iterator() {
+        return new BucketArrayIterator<K, V>(buckets);
+    }
+}
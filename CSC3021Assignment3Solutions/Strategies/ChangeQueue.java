@@ -0,0 +1,72 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Changes to a structure that is only ever touched under one lock, such as the clock of BoundedCache or
+ * the timing wheel of ExpiringHash. The thread that makes a change queues it and then tries the lock:
+ * whichever thread gets it applies every queued change and runs maintenance (evicting, expiring), and
+ * the others carry on without waiting. A thread only waits for the lock once more than MAX_PENDING
+ * changes are queued, so the structure cannot fall far behind.
+ */
+final class ChangeQueue {
+    /**
+     * Number of queued changes above which threads wait for the lock instead of trying it.
+     */
+    private static final int MAX_PENDING = 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicInteger pending_count = new AtomicInteger();
+    private final Runnable maintenance;
+
+    /**
+     * @param maintenance - run while holding the lock after every batch of changes
+     */
+    ChangeQueue(Runnable maintenance) {
+        this.maintenance = maintenance;
+    }
+
+    void add(Runnable change) {
+        pending.add(change);
+        pending_count.incrementAndGet();
+        drain();
+    }
+
+    /**
+     * Applies the queued changes unless another thread holds the lock. The queue is checked again after
+     * unlocking, since a change queued while the holder was finishing would otherwise wait for the next.
+     */
+    void drain() {
+        while (!pending.isEmpty()) {
+            if (pending_count.get() > MAX_PENDING)
+                lock.lock();
+            else if (!lock.tryLock())
+                return;
+            try {
+                applyAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Applies the queued changes and runs maintenance, waiting for the lock if need be.
+    void drainNow() {
+        lock.lock();
+        try {
+            applyAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void applyAll() {
+        Runnable change;
+        while ((change = pending.poll()) != null) {
+            pending_count.decrementAndGet();
+            change.run();
+        }
+        maintenance.run();
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * The unsynchronized Chain from Q1. It relies on its owner (CoarseHash) holding a lock
+ * around every call, and is not thread-safe on its own.
+ */
+class CoarseChain<K, V> implements Bucket<K, V> {
+    private Node head;
+    private final LongAdder counter;
+
+    // This iterator is only required for Q6 and
+    // may otherwise be ignored.
+    public class ChainIterator implements java.util.Iterator<KeyValue<K, V>> {
+        private Node cur;
+
+        public ChainIterator() {
+            cur = head;
+        }
+
+        public boolean hasNext() {
+            return cur.next != null
+                    && cur.next.hash != Integer.MAX_VALUE;
+        }
+
+        public KeyValue<K, V> next() {
+            cur = cur.next;
+            return new KeyValue<K, V>(cur.key, cur.value);
+        }
+    }
+
+    public java.util.Iterator<KeyValue<K, V>> iterator() {
+        return new ChainIterator();
+    }
+
+    private class Node {
+        int hash;
+        K key;
+        V value;
+        Node next;
+
+        public Node(int hash) {
+            this.hash = hash;
+            this.key = null;
+            this.value = null;
+            this.next = null;
+        }
+
+        public Node(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = null;
+        }
+    }
+
+    public CoarseChain() {
+        this(new LongAdder());
+    }
+
+    public CoarseChain(LongAdder counter) {
+        this.counter = counter;
+        Node tail = new Node(Integer.MAX_VALUE);
+        head = new Node(Integer.MIN_VALUE);
+        head.next = tail;
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        // Require key != null and value != null
+        // Get hash code
+        int hash = key.hashCode();
+
+        Node pred = head, curr = pred.next;
+        while (curr.hash <= hash) {
+            if (key.equals(curr.key)) { // key present, update value
+                curr.value = value;
+                return false;
+            }
+            pred = curr;
+            curr = curr.next;
+        }
+
+        // key not present
+        Node node = new Node(hash, key, value);
+        node.next = pred.next;
+        pred.next = node;
+        counter.increment();
+
+        return true;
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        // Require key != null
+        // Get hash code
+        int hash = key.hashCode();
+
+        Node curr = head;
+        while (curr.hash <= hash) {
+            if (key.equals(curr.key)) {
+                return curr.value;
+            }
+            curr = curr.next;
+        }
+
+        // key not found
+        return null;
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        // Require key != null
+        // Get hash code
+        int hash = key.hashCode();
+
+        Node pred = head;
+        Node curr = pred.next;
+        while (curr.hash <= hash) {
+            if (key.equals(curr.key)) {
+                pred.next = curr.next;
+                counter.decrement();
+                return true;
+            }
+            pred = curr;
+            curr = curr.next;
+        }
+
+        // key not found
+        return false;
+    }
+
+    // Find key once and apply remapping to its value.
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        // Require key != null
+        // Get hash code
+        int hash = key.hashCode();
+
+        Node pred = head, curr = pred.next;
+        while (curr.hash <= hash) {
+            if (key.equals(curr.key)) { // key present, remap value
+                V value = remapping.apply(key, curr.value);
+                if (value != null) {
+                    curr.value = value;
+                } else {
+                    pred.next = curr.next;
+                    counter.decrement();
+                }
+                return value;
+            }
+            pred = curr;
+            curr = curr.next;
+        }
+
+        // key not present
+        V value = remapping.apply(key, null);
+        if (value != null) {
+            Node node = new Node(hash, key, value);
+            node.next = pred.next;
+            pred.next = node;
+            counter.increment();
+        }
+        return value;
+    }
+
+    // Insert the sorted entries in one walk.
+    public int addAll(List<KeyValue<K, V>> sorted) {
+        int added = 0;
+        Node pred = head, curr = pred.next;
+        for (KeyValue<K, V> kv : sorted) {
+            int hash = kv.key.hashCode();
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            // pred is now just before the nodes with this hash, look for the key among them
+            Node p = pred, c = curr;
+            while (c.hash == hash && !kv.key.equals(c.key)) {
+                p = c;
+                c = c.next;
+            }
+            if (c.hash == hash) { // key present, update value
+                c.value = kv.value;
+            } else {
+                Node node = new Node(hash, kv.key, kv.value);
+                node.next = c;
+                p.next = node;
+                counter.increment();
+                added++;
+                curr = pred.next;
+            }
+        }
+        return added;
+    }
+
+    // Lookup the sorted keys in one walk.
+    public List<V> getAll(List<K> sorted) {
+        List<V> values = new ArrayList<V>(sorted.size());
+        Node curr = head.next;
+        for (K key : sorted) {
+            int hash = key.hashCode();
+            while (curr.hash < hash) {
+                curr = curr.next;
+            }
+            Node c = curr;
+            while (c.hash == hash && !key.equals(c.key)) {
+                c = c.next;
+            }
+            values.add(c.hash == hash ? c.value : null);
+        }
+        return values;
+    }
+
+    // Remove the sorted keys in one walk.
+    public int removeAll(List<K> sorted) {
+        int removed = 0;
+        Node pred = head, curr = pred.next;
+        for (K key : sorted) {
+            int hash = key.hashCode();
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            Node p = pred, c = curr;
+            while (c.hash == hash && !key.equals(c.key)) {
+                p = c;
+                c = c.next;
+            }
+            if (c.hash == hash) {
+                p.next = c.next;
+                counter.decrement();
+                removed++;
+                curr = pred.next;
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+
+        Node n = head.next;
+        while (n.next != null) {
+            size++;
+            n = n.next;
+        }
+        return size;
+    }
+}
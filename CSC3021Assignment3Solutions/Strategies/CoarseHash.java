@@ -0,0 +1,216 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+/**
+ * The coarse-grained Hash from Q1. Every method is synchronized, so calling threads have to acquire
+ * the object's intrinsic lock before any progression. This is simple and safe for any kind of chain,
+ * but it is a sequential bottleneck.
+ * The table resizes itself when the ResizePolicy says the average chain length is too long or too short.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the chain.
+ * @param <V> This is the value. It will be associated with a key in the chain.
+ */
+public class CoarseHash<K, V> implements ConcurrentHash<K, V> {
+    private final Function<LongAdder, Bucket<K, V>> newBucket;
+    private final ResizePolicy policy;
+    private int num_buckets;
+    private Bucket<K, V>[] buckets;
+    /**
+     * Shared by every chain in buckets. resize() builds the new chains with a new counter.
+     */
+    private volatile LongAdder count;
+
+    public CoarseHash(int num_buckets_, Function<LongAdder, Bucket<K, V>> newBucket) {
+        this(num_buckets_, newBucket, ResizePolicy.DEFAULT);
+    }
+
+    public CoarseHash(int num_buckets_, Function<LongAdder, Bucket<K, V>> newBucket, ResizePolicy policy) {
+        this.newBucket = newBucket;
+        this.policy = policy;
+        num_buckets = num_buckets_;
+        count = new LongAdder();
+        buckets = newBucketArray(num_buckets, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Bucket<K, V>[] newBucketArray(int n, LongAdder counter) {
+        Bucket<K, V>[] array = (Bucket<K, V>[]) new Bucket[n];
+        for (int i = 0; i < n; ++i)
+            array[i] = newBucket.apply(counter);
+        return array;
+    }
+
+    public synchronized int getArraySize() {
+        return num_buckets;
+    }
+
+    public synchronized void resize(int new_num_buckets) {
+        Bucket<K, V>[] old_buckets = buckets;
+        int old_num_buckets = num_buckets;
+
+        num_buckets = new_num_buckets;
+        LongAdder new_count = new LongAdder();
+        buckets = newBucketArray(num_buckets, new_count);
+
+        // Iterate and rehash
+        for (int i = 0; i < old_num_buckets; ++i) {
+            Iterator<KeyValue<K, V>> iter = old_buckets[i].iterator();
+            while (iter.hasNext()) {
+                KeyValue<K, V> kv = iter.next();
+                buckets[bHash(kv.key.hashCode())].add(kv.key, kv.value);
+            }
+        }
+        count = new_count;
+    }
+
+    // Called with the lock held after every add or remove that changed the count.
+    private void checkLoad() {
+        int target = policy.targetBuckets(count.sum(), num_buckets);
+        if (target != num_buckets)
+            resize(target);
+    }
+
+    private int bHash(int hash) {
+        return Math.abs(hash % num_buckets);
+    }
+
+    public synchronized boolean add(K key, V value) {
+        int bhash = bHash(key.hashCode());
+        if (!buckets[bhash].add(key, value))
+            return false;
+        checkLoad();
+        return true;
+    }
+
+    public synchronized V get(K key) {
+        int bhash = bHash(key.hashCode());
+        return buckets[bhash].get(key);
+    }
+
+    public synchronized boolean remove(K key) {
+        int bhash = bHash(key.hashCode());
+        if (!buckets[bhash].remove(key))
+            return false;
+        checkLoad();
+        return true;
+    }
+
+    /**
+     * Resizes if the entry was added or removed, as add() and remove() do.
+     */
+    public synchronized V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int bhash = bHash(key.hashCode());
+        V value = buckets[bhash].compute(key, remapping);
+        checkLoad();
+        return value;
+    }
+
+    /**
+     * The batch is grouped by bucket, so each chain is walked once for all of its keys.
+     */
+    public synchronized int addAll(List<KeyValue<K, V>> entries) {
+        Bucket<K, V>[] b = buckets;
+        BatchPartition p = BatchPartition.ofEntries(entries, b.length);
+        int added = 0;
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            added += b[p.bucket(start)].addAll(p.select(entries, start, end));
+        }
+        if (added > 0)
+            checkLoad();
+        return added;
+    }
+
+    public synchronized List<V> getAll(List<K> keys) {
+        Bucket<K, V>[] b = buckets;
+        BatchPartition p = BatchPartition.ofKeys(keys, b.length);
+        List<V> values = BatchPartition.nulls(keys.size());
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            p.scatter(b[p.bucket(start)].getAll(p.select(keys, start, end)), values, start);
+        }
+        return values;
+    }
+
+    public synchronized int removeAll(List<K> keys) {
+        Bucket<K, V>[] b = buckets;
+        BatchPartition p = BatchPartition.ofKeys(keys, b.length);
+        int removed = 0;
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            removed += b[p.bucket(start)].removeAll(p.select(keys, start, end));
+        }
+        if (removed > 0)
+            checkLoad();
+        return removed;
+    }
+
+    /**
+     * The chains are not thread-safe, so the bulk operations copy one bucket at a time while holding
+     * the lock and run the action on the copy. A resize replaces buckets with new chains and leaves the
+     * old ones as they were, so walking an old array only misses the changes made after the resize.
+     */
+    private BucketBulk<K, V> bulk() {
+        Bucket<K, V>[] b;
+        synchronized (this) {
+            b = buckets;
+        }
+        return new BucketBulk<K, V>(b.length, i -> copyBucket(b[i]), count.sum());
+    }
+
+    private synchronized Iterator<KeyValue<K, V>> copyBucket(Bucket<K, V> bucket) {
+        List<KeyValue<K, V>> entries = new ArrayList<KeyValue<K, V>>();
+        Iterator<KeyValue<K, V>> iter = bucket.iterator();
+        while (iter.hasNext())
+            entries.add(iter.next());
+        return entries.iterator();
+    }
+
+    public void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+        bulk().forEach(parallelismThreshold, action);
+    }
+
+    public <U> U search(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        return bulk().search(parallelismThreshold, searchFunction);
+    }
+
+    public <U> U mapReduce(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> transformer,
+                           BinaryOperator<U> reducer) {
+        return bulk().mapReduce(parallelismThreshold, transformer, reducer);
+    }
+
+    public Spliterator<KeyValue<K, V>> spliterator() {
+        return bulk().spliterator();
+    }
+
+    public synchronized int size() {
+        return (int) count.sum();
+    }
+
+    /**
+     * Not synchronized, so monitoring threads never wait for the lock.
+     */
+    public long estimatedSize() {
+        return count.sum();
+    }
+
+    /**
+     * The chains are not thread-safe on their own, so the entries are copied while holding the lock
+     * and the iterator walks that copy.
+     */
+    public synchronized Iterator<KeyValue<K, V>> iterator() {
+        List<KeyValue<K, V>> entries = new ArrayList<KeyValue<K, V>>();
+        for (int i = 0; i < num_buckets; ++i) {
+            Iterator<KeyValue<K, V>> iter = buckets[i].iterator();
+            while (iter.hasNext())
+                entries.add(iter.next());
+        }
+        return entries.iterator();
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The operations shared by every Hash solution. Each synchronization strategy implements this
+ * interface and is created by name through HashFactory, so the strategy can be chosen at runtime
+ * instead of by swapping solution directories.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the chain.
+ * @param <V> This is the value. It will be associated with a key in the chain.
+ */
+public interface ConcurrentHash<K, V> extends Iterable<KeyValue<K, V>> {
+    // Insert value for key. Returns true if a new entry was added.
+    boolean add(K key, V value);
+
+    // Lookup value for key, null if the key is not present.
+    V get(K key);
+
+    // Remove key/value pair. Returns true if an entry was removed.
+    boolean remove(K key);
+
+    /**
+     * Atomically replaces the value for key with remapping.apply(key, current value or null), and
+     * removes the entry (or does not add one) if that returns null. Returns the new value.
+     * Unlike get() followed by add(), the entry is found once and no other update to it can come
+     * in between. remapping should be short and must not use this Hash. A lock-free Hash may apply
+     * it more than once, as may the open-addressing Hashes when they have to grow to fit a new entry.
+     * The operations below are all built on compute().
+     */
+    V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping);
+
+    /**
+     * The value for key, adding mapping.apply(key) first if there is none (nothing is added if that
+     * returns null). A key that is already present is found without taking any lock for writing.
+     */
+    default V computeIfAbsent(K key, Function<? super K, ? extends V> mapping) {
+        V value = get(key);
+        if (value != null)
+            return value;
+        return compute(key, (k, old) -> old != null ? old : mapping.apply(k));
+    }
+
+    default V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        return compute(key, (k, old) -> old == null ? null : remapping.apply(k, old));
+    }
+
+    // Adds value for key, or combines it with the present value, removing the entry if that is null.
+    default V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remapping) {
+        return compute(key, (k, old) -> old == null ? value : remapping.apply(old, value));
+    }
+
+    // Adds value for key unless the key is present. Returns the present value, or null if it was added.
+    default V putIfAbsent(K key, V value) {
+        AtomicReference<V> present = new AtomicReference<V>();
+        compute(key, (k, old) -> {
+            present.set(old);
+            return old != null ? old : value;
+        });
+        return present.get();
+    }
+
+    // Replaces the value for key only if it is present. Returns the previous value, or null.
+    default V replace(K key, V value) {
+        AtomicReference<V> previous = new AtomicReference<V>();
+        compute(key, (k, old) -> {
+            previous.set(old);
+            return old != null ? value : null;
+        });
+        return previous.get();
+    }
+
+    // Replaces the value for key only if it is currently oldValue (by equals).
+    default boolean replace(K key, V oldValue, V newValue) {
+        AtomicReference<Boolean> replaced = new AtomicReference<Boolean>(false);
+        compute(key, (k, old) -> {
+            replaced.set(old != null && old.equals(oldValue));
+            return replaced.get() ? newValue : old;
+        });
+        return replaced.get();
+    }
+
+    // Removes the entry for key only if its value is currently value (by equals).
+    default boolean remove(K key, V value) {
+        AtomicReference<Boolean> removed = new AtomicReference<Boolean>(false);
+        compute(key, (k, old) -> {
+            removed.set(old != null && old.equals(value));
+            return removed.get() ? null : old;
+        });
+        return removed.get();
+    }
+
+    // Number of entries, read from a counter rather than by walking the chains.
+    int size();
+
+    /**
+     * The number of entries, without any synchronization with concurrent add() and remove() calls,
+     * so it may be slightly out of date. Intended for monitoring.
+     */
+    default long estimatedSize() {
+        return size();
+    }
+
+    /**
+     * Adds every entry of the batch. A Hash built from chains groups the batch by bucket and hands each
+     * chain its part sorted by hash code, so the chain is locked and walked once per batch instead of
+     * once per entry. Returns the number of entries added.
+     */
+    default int addAll(List<KeyValue<K, V>> entries) {
+        int added = 0;
+        for (KeyValue<K, V> kv : entries)
+            if (add(kv.key, kv.value))
+                added++;
+        return added;
+    }
+
+    // Values for the keys, in the same order as the keys, null for keys that are not present.
+    default List<V> getAll(List<K> keys) {
+        List<V> values = new ArrayList<V>(keys.size());
+        for (K key : keys)
+            values.add(get(key));
+        return values;
+    }
+
+    // Removes every key of the batch. Returns the number of entries removed.
+    default int removeAll(List<K> keys) {
+        int removed = 0;
+        for (K key : keys)
+            if (remove(key))
+                removed++;
+        return removed;
+    }
+
+    /**
+     * Bulk operations in the style of ConcurrentHashMap. A Hash built from buckets splits its bucket
+     * array between ForkJoin tasks once it holds at least parallelismThreshold entries (Long.MAX_VALUE
+     * never forks); these defaults walk iterator() on the calling thread. They are weakly consistent
+     * with concurrent add() and remove(), like the iterators.
+     */
+    default void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+        for (KeyValue<K, V> kv : this)
+            action.accept(kv.key, kv.value);
+    }
+
+    // A non-null result of searchFunction for some entry, null if it returns null for every entry.
+    default <U> U search(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        for (KeyValue<K, V> kv : this) {
+            U u = searchFunction.apply(kv.key, kv.value);
+            if (u != null)
+                return u;
+        }
+        return null;
+    }
+
+    // Every value combined with reducer, null if the table is empty.
+    default V reduce(long parallelismThreshold, BinaryOperator<V> reducer) {
+        return mapReduce(parallelismThreshold, (key, value) -> value, reducer);
+    }
+
+    // The non-null results of transformer combined with reducer, null if there are none.
+    default <U> U mapReduce(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> transformer,
+                            BinaryOperator<U> reducer) {
+        U r = null;
+        for (KeyValue<K, V> kv : this) {
+            U u = transformer.apply(kv.key, kv.value);
+            if (u != null)
+                r = r == null ? u : reducer.apply(r, u);
+        }
+        return r;
+    }
+
+    /**
+     * A Hash built from buckets splits by bucket range; this default cannot split and only knows the
+     * size of the table. Weakly consistent, like the iterator.
+     */
+    @Override
+    default Spliterator<KeyValue<K, V>> spliterator() {
+        return Spliterators.spliterator(iterator(), estimatedSize(), Spliterator.CONCURRENT | Spliterator.NONNULL);
+    }
+
+    default Stream<KeyValue<K, V>> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    default Stream<KeyValue<K, V>> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    // Rehash every entry into new_num_buckets buckets.
+    void resize(int new_num_buckets);
+
+    int getArraySize();
+
+    Iterator<KeyValue<K, V>> iterator();
+}
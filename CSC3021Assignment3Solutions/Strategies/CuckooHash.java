@@ -0,0 +1,410 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * A concurrent phased cuckoo Hash with striped locks (Herlihy and Shavit). Every key has one slot in
+ * each of two tables, chosen by two different hash functions, so a lookup only ever looks at two slots.
+ * Each slot is a small probe set rather than a single entry: add() normally keeps probe sets under
+ * THRESHOLD entries, and only fills them up to PROBE_SIZE while it relocates (cuckoo-moves) the oldest
+ * entry of an overfull probe set to its slot in the other table, one step at a time. If relocation
+ * fails and the table is loaded enough for it to help, the table doubles.
+ * Slot i of table t is guarded by locks[t][i % locks[t].length]. The capacity is always a multiple of
+ * the number of locks, so every key of a slot maps to the same lock. A thread always takes the lock in
+ * table 0 before the one in table 1, and resize() takes every lock of table 0, which stops everything.
+ * This table decides its own size, so it does not use a ResizePolicy.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the table.
+ * @param <V> This is the value. It will be associated with a key in the table.
+ */
+public class CuckooHash<K, V> implements ConcurrentHash<K, V> {
+    private static final int PROBE_SIZE = 4;
+    private static final int THRESHOLD = 2;
+    /**
+     * Maximum number of cuckoo moves relocate() makes before it gives up and the table is resized.
+     */
+    private static final int LIMIT = 32;
+    private static final int MAX_LOCKS = 64;
+    private static final int HASH1_SEED = 0x9E3779B9;
+
+    private volatile int capacity;
+    private volatile List<Entry<K, V>>[][] table;
+    private final ReentrantLock[][] locks;
+    private final LongAdder count = new LongAdder();
+
+    private static final class Entry<K, V> {
+        final K key;
+        final V value;
+
+        Entry(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    public CuckooHash(int num_buckets_) {
+        int num_locks = Math.max(1, Math.min(num_buckets_, MAX_LOCKS));
+        locks = new ReentrantLock[2][num_locks];
+        for (int i = 0; i < 2; ++i)
+            for (int j = 0; j < num_locks; ++j)
+                locks[i][j] = new ReentrantLock();
+        capacity = roundCapacity(num_buckets_);
+        table = newTable(capacity);
+    }
+
+    // The capacity must be a multiple of the number of locks.
+    private int roundCapacity(int n) {
+        int num_locks = locks[0].length;
+        return Math.max(1, (n + num_locks - 1) / num_locks) * num_locks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> List<Entry<K, V>>[][] newTable(int capacity) {
+        List<Entry<K, V>>[][] t = (List<Entry<K, V>>[][]) new List[2][capacity];
+        for (int i = 0; i < 2; ++i)
+            for (int j = 0; j < capacity; ++j)
+                t[i][j] = new ArrayList<Entry<K, V>>(PROBE_SIZE);
+        return t;
+    }
+
+    private static int hash0(Object key) {
+        return mix(key.hashCode());
+    }
+
+    // A second hash function, independent of hash0 since the hash code is seeded before it is mixed.
+    private static int hash1(Object key) {
+        return mix(key.hashCode() ^ HASH1_SEED);
+    }
+
+    // The MurmurHash3 finalizer, so that every bit of the hash code affects the bucket.
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h & 0x7FFFFFFF;
+    }
+
+    private void acquire(Object key) {
+        locks[0][hash0(key) % locks[0].length].lock();
+        locks[1][hash1(key) % locks[1].length].lock();
+    }
+
+    private void release(Object key) {
+        locks[1][hash1(key) % locks[1].length].unlock();
+        locks[0][hash0(key) % locks[0].length].unlock();
+    }
+
+    private static <K, V> Entry<K, V> find(List<Entry<K, V>> set, K key) {
+        for (int i = 0; i < set.size(); ++i) {
+            Entry<K, V> e = set.get(i);
+            if (key.equals(e.key))
+                return e;
+        }
+        return null;
+    }
+
+    public int getArraySize() {
+        return capacity;
+    }
+
+    /**
+     * Resizes to at least new_num_buckets slots per table (rounded up to a multiple of the number of locks).
+     */
+    public void resize(int new_num_buckets) {
+        resize(capacity, roundCapacity(new_num_buckets));
+    }
+
+    /**
+     * Takes every lock of table 0, which stops all other operations, and rehashes into new tables.
+     * Nothing happens if another thread already changed the capacity from oldCapacity.
+     */
+    private void resize(int oldCapacity, int newCapacity) {
+        for (ReentrantLock lock : locks[0])
+            lock.lock();
+        try {
+            if (capacity != oldCapacity || newCapacity == oldCapacity)
+                return;
+            List<Entry<K, V>>[][] oldTable = table;
+            List<Entry<K, V>>[][] newTable = newTable(newCapacity);
+            for (List<Entry<K, V>>[] row : oldTable)
+                for (List<Entry<K, V>> set : row)
+                    for (Entry<K, V> e : set)
+                        place(newTable, newCapacity, e);
+            table = newTable;
+            capacity = newCapacity;
+        } finally {
+            for (ReentrantLock lock : locks[0])
+                lock.unlock();
+        }
+    }
+
+    // Sequential placement, only used while resize() holds every lock.
+    private static <K, V> void place(List<Entry<K, V>>[][] t, int cap, Entry<K, V> e) {
+        List<Entry<K, V>> set0 = t[0][hash0(e.key) % cap];
+        List<Entry<K, V>> set1 = t[1][hash1(e.key) % cap];
+        if (set0.size() < THRESHOLD)
+            set0.add(e);
+        else if (set1.size() < THRESHOLD)
+            set1.add(e);
+        else if (set0.size() <= set1.size())
+            set0.add(e);
+        else
+            set1.add(e);
+    }
+
+    /**
+     * A resize only helps if the table is actually loaded. When there are no more entries than slots in
+     * one table the probe sets are full because keys collide under both hash functions (e.g. identical
+     * hash codes), which no capacity can separate, so the entry goes in a probe set beyond PROBE_SIZE instead.
+     */
+    private boolean worthResizing(int cap) {
+        return cap <= ResizePolicy.MAX_BUCKETS / 2 && count.sum() > cap;
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        Entry<K, V> entry = new Entry<K, V>(key, value);
+        while (true) {
+            int h0 = hash0(key), h1 = hash1(key);
+            int i = -1, h = -1;
+            boolean mustResize = false;
+            int cap;
+            acquire(key);
+            try {
+                cap = capacity;
+                List<Entry<K, V>>[][] t = table;
+                List<Entry<K, V>> set0 = t[0][h0 % cap];
+                List<Entry<K, V>> set1 = t[1][h1 % cap];
+                if (find(set0, key) != null || find(set1, key) != null)
+                    return false;
+                count.increment();
+                if (set0.size() < THRESHOLD) {
+                    set0.add(entry);
+                    return true;
+                } else if (set1.size() < THRESHOLD) {
+                    set1.add(entry);
+                    return true;
+                } else if (set0.size() < PROBE_SIZE) {
+                    set0.add(entry);
+                    i = 0;
+                    h = h0 % cap;
+                } else if (set1.size() < PROBE_SIZE) {
+                    set1.add(entry);
+                    i = 1;
+                    h = h1 % cap;
+                } else if (worthResizing(cap)) {
+                    count.decrement();
+                    mustResize = true;
+                } else {
+                    // overflow
+                    (set0.size() <= set1.size() ? set0 : set1).add(entry);
+                    return true;
+                }
+            } finally {
+                release(key);
+            }
+            if (mustResize) {
+                resize(cap, cap * 2);
+                continue;
+            }
+            if (!relocate(i, h, cap) && worthResizing(cap))
+                resize(cap, cap * 2);
+            return true;
+        }
+    }
+
+    /**
+     * Moves entries out of probe set h of table i, which is above THRESHOLD, into their slot in the
+     * other table, following the chain of displaced entries for at most LIMIT steps.
+     * Returns false if the probe sets are still too full and the table should be resized.
+     */
+    private boolean relocate(int i, int hi, int cap) {
+        int j = 1 - i;
+        for (int round = 0; round < LIMIT; round++) {
+            K y;
+            // look at the oldest entry of the set under its own lock, then lock both of its slots.
+            // A lock of table 0 is always taken first, which also keeps resize() out.
+            ReentrantLock lock0 = locks[0][hi % locks[0].length];
+            ReentrantLock lock1 = i == 1 ? locks[1][hi % locks[1].length] : null;
+            lock0.lock();
+            if (lock1 != null)
+                lock1.lock();
+            try {
+                if (capacity != cap)
+                    return true; // resized in the meantime, which makes room
+                List<Entry<K, V>> iSet = table[i][hi];
+                if (iSet.size() < THRESHOLD)
+                    return true;
+                y = iSet.get(0).key;
+            } finally {
+                if (lock1 != null)
+                    lock1.unlock();
+                lock0.unlock();
+            }
+            int hj = (j == 0 ? hash0(y) : hash1(y)) % cap;
+            acquire(y);
+            try {
+                if (capacity != cap)
+                    return true;
+                List<Entry<K, V>> iSet = table[i][hi];
+                List<Entry<K, V>> jSet = table[j][hj];
+                Entry<K, V> e = find(iSet, y);
+                if (e != null) {
+                    iSet.remove(e);
+                    if (jSet.size() < THRESHOLD) {
+                        jSet.add(e);
+                        return true;
+                    } else if (jSet.size() < PROBE_SIZE) {
+                        jSet.add(e);
+                        i = 1 - i;
+                        hi = hj;
+                        j = 1 - j;
+                    } else {
+                        iSet.add(e);
+                        return false;
+                    }
+                } else if (iSet.size() < THRESHOLD) {
+                    return true;
+                }
+            } finally {
+                release(y);
+            }
+        }
+        return false;
+    }
+
+    // Lookup value for key. Only the two slots the key can be in are checked.
+    public V get(K key) {
+        acquire(key);
+        try {
+            int cap = capacity;
+            List<Entry<K, V>>[][] t = table;
+            Entry<K, V> e = find(t[0][hash0(key) % cap], key);
+            if (e == null)
+                e = find(t[1][hash1(key) % cap], key);
+            return e == null ? null : e.value;
+        } finally {
+            release(key);
+        }
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        acquire(key);
+        try {
+            int cap = capacity;
+            List<Entry<K, V>>[][] t = table;
+            List<Entry<K, V>> set = t[0][hash0(key) % cap];
+            Entry<K, V> e = find(set, key);
+            if (e == null) {
+                set = t[1][hash1(key) % cap];
+                e = find(set, key);
+            }
+            if (e == null)
+                return false;
+            set.remove(e);
+            count.decrement();
+            return true;
+        } finally {
+            release(key);
+        }
+    }
+
+    /**
+     * Holds both locks of key while it applies remapping. A new entry is placed as add() places it; if
+     * both probe sets are full and the table should grow, it grows before remapping is applied.
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        while (true) {
+            int h0 = hash0(key), h1 = hash1(key);
+            int i = -1, h = -1;
+            int cap;
+            V value = null;
+            acquire(key);
+            try {
+                cap = capacity;
+                List<Entry<K, V>>[][] t = table;
+                List<Entry<K, V>> set0 = t[0][h0 % cap];
+                List<Entry<K, V>> set1 = t[1][h1 % cap];
+                List<Entry<K, V>> set = set0;
+                Entry<K, V> e = find(set0, key);
+                if (e == null) {
+                    set = set1;
+                    e = find(set1, key);
+                }
+                if (e != null) {
+                    value = remapping.apply(key, e.value);
+                    if (value == null) {
+                        set.remove(e);
+                        count.decrement();
+                    } else if (value != e.value) {
+                        set.set(set.indexOf(e), new Entry<K, V>(e.key, value));
+                    }
+                    return value;
+                }
+                if (set0.size() < PROBE_SIZE || set1.size() < PROBE_SIZE || !worthResizing(cap)) {
+                    value = remapping.apply(key, null);
+                    if (value == null)
+                        return null;
+                    Entry<K, V> entry = new Entry<K, V>(key, value);
+                    count.increment();
+                    if (set0.size() < THRESHOLD) {
+                        set0.add(entry);
+                        return value;
+                    } else if (set1.size() < THRESHOLD) {
+                        set1.add(entry);
+                        return value;
+                    } else if (set0.size() < PROBE_SIZE) {
+                        set0.add(entry);
+                        i = 0;
+                        h = h0 % cap;
+                    } else if (set1.size() < PROBE_SIZE) {
+                        set1.add(entry);
+                        i = 1;
+                        h = h1 % cap;
+                    } else {
+                        // overflow
+                        (set0.size() <= set1.size() ? set0 : set1).add(entry);
+                        return value;
+                    }
+                }
+            } finally {
+                release(key);
+            }
+            if (i < 0) {
+                resize(cap, cap * 2);
+                continue;
+            }
+            if (!relocate(i, h, cap) && worthResizing(cap))
+                resize(cap, cap * 2);
+            return value;
+        }
+    }
+
+    public int size() {
+        return (int) count.sum();
+    }
+
+    /**
+     * Copies the entries while holding every lock of table 0, so the copy is a consistent snapshot.
+     */
+    public Iterator<KeyValue<K, V>> iterator() {
+        List<KeyValue<K, V>> entries = new ArrayList<KeyValue<K, V>>();
+        for (ReentrantLock lock : locks[0])
+            lock.lock();
+        try {
+            for (List<Entry<K, V>>[] row : table)
+                for (List<Entry<K, V>> set : row)
+                    for (Entry<K, V> e : set)
+                        entries.add(new KeyValue<K, V>(e.key, e.value));
+        } finally {
+            for (ReentrantLock lock : locks[0])
+                lock.unlock();
+        }
+        return entries.iterator();
+    }
+}
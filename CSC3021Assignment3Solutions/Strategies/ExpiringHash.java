@@ -0,0 +1,240 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * A ConcurrentHash over any strategy whose entries expire a time to live after they were written
+ * (add(), or compute() changing the value). An expired entry is never returned: get() checks the
+ * deadline of the entry it finds and removes it if it has passed, so expiry costs nothing until the
+ * key is looked up. Entries that are never looked up again are reclaimed by a TimingWheel, which keeps
+ * a timer per entry and hands back the expired ones without scanning the buckets. The wheel is only
+ * touched through a ChangeQueue: writers queue their timers, and whichever writer gets the lock turns
+ * the wheel and removes what has expired, so expired entries are reclaimed as writes come in or when
+ * expire() is called.
+ * Entries are removed with remove(key, entry), so an expiring entry never takes a newer value of its
+ * key with it. size() counts entries that have expired but have not been reclaimed yet.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the chain.
+ * @param <V> This is the value. It will be associated with a key in the chain.
+ */
+public class ExpiringHash<K, V> implements ConcurrentHash<K, V> {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // Longer times to live are cut down to this, so deadlines do not overflow.
+    private static final long MAX_TTL_NANOS = Long.MAX_VALUE / 2;
+
+    private final ConcurrentHash<K, Entry<K, V>> map;
+    private final long ttl_nanos;
+    private final LongSupplier ticker;
+    private final TimingWheel wheel;
+    private final ChangeQueue changes = new ChangeQueue(this::expireDue);
+    private final LongAdder expirations = new LongAdder();
+
+    private static final class Entry<K, V> extends TimingWheel.Timer {
+        final K key;
+        final V value;
+        // System.nanoTime() (or the ticker) at which the entry expires.
+        final long expires;
+        // Set once the entry has left the Hash, so a queued timer is not put on the wheel.
+        volatile boolean retired;
+
+        Entry(K key, V value, long expires) {
+            this.key = key;
+            this.value = value;
+            this.expires = expires;
+        }
+
+        boolean expiredAt(long now) {
+            return now - expires >= 0;
+        }
+    }
+
+    /**
+     * @param strategy - the Hash that holds the entries
+     * @param num_buckets - initial number of buckets of that Hash
+     * @param ttl - how long an entry lives after it was written, unless add() is given its own
+     * @param unit - the unit of ttl
+     */
+    public ExpiringHash(HashFactory.Strategy strategy, int num_buckets, long ttl, TimeUnit unit) {
+        this(strategy, num_buckets, ttl, unit, System::nanoTime);
+    }
+
+    // ticker stands in for System.nanoTime().
+    ExpiringHash(HashFactory.Strategy strategy, int num_buckets, long ttl, TimeUnit unit, LongSupplier ticker) {
+        if (ttl < 0)
+            throw new IllegalArgumentException("ttl must not be negative: " + ttl);
+        this.map = HashFactory.create(strategy, num_buckets);
+        this.ttl_nanos = Math.min(unit.toNanos(ttl), MAX_TTL_NANOS);
+        this.ticker = ticker;
+        this.wheel = new TimingWheel(TICK_NANOS, ticker.getAsLong());
+    }
+
+    // Insert value for key, to live for the default time to live.
+    public boolean add(K key, V value) {
+        return add(key, value, ttl_nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Insert value for key, to live for ttl. An expired entry for key counts as absent and is replaced.
+     */
+    public boolean add(K key, V value, long ttl, TimeUnit unit) {
+        long now = ticker.getAsLong();
+        Entry<K, V> entry = new Entry<K, V>(key, value, now + Math.min(unit.toNanos(ttl), MAX_TTL_NANOS));
+        AtomicReference<Entry<K, V>> expired = new AtomicReference<Entry<K, V>>();
+        Entry<K, V> result = map.compute(key, (k, old) -> {
+            expired.set(null);
+            if (old != null && !old.expiredAt(now))
+                return old;
+            expired.set(old);
+            return entry;
+        });
+        if (result != entry)
+            return false;
+        if (expired.get() != null)
+            retire(expired.get());
+        changes.add(() -> schedule(entry));
+        return true;
+    }
+
+    // Lookup value for key, null if it is not present or has expired.
+    public V get(K key) {
+        Entry<K, V> e = map.get(key);
+        if (e == null)
+            return null;
+        if (e.expiredAt(ticker.getAsLong())) {
+            if (map.remove(key, e)) {
+                expirations.increment();
+                retire(e);
+            }
+            return null;
+        }
+        return e.value;
+    }
+
+    // Remove key/value pair. Returns false if the entry had already expired.
+    public boolean remove(K key) {
+        long now = ticker.getAsLong();
+        AtomicReference<Entry<K, V>> removed = new AtomicReference<Entry<K, V>>();
+        map.compute(key, (k, old) -> {
+            removed.set(old);
+            return null;
+        });
+        Entry<K, V> old = removed.get();
+        if (old == null)
+            return false;
+        retire(old);
+        return !old.expiredAt(now);
+    }
+
+    /**
+     * An expired entry is passed to remapping as null. A new value lives for the default time to live;
+     * returning the present value unchanged keeps its deadline.
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        long now = ticker.getAsLong();
+        AtomicReference<Entry<K, V>> previous = new AtomicReference<Entry<K, V>>();
+        AtomicReference<Entry<K, V>> written = new AtomicReference<Entry<K, V>>();
+        Entry<K, V> result = map.compute(key, (k, old) -> {
+            previous.set(old);
+            written.set(null);
+            V present = old == null || old.expiredAt(now) ? null : old.value;
+            V value = remapping.apply(k, present);
+            if (value == null)
+                return null;
+            if (value == present)
+                return old;
+            written.set(new Entry<K, V>(k, value, now + ttl_nanos));
+            return written.get();
+        });
+        Entry<K, V> old = previous.get();
+        if (old != null && result != old)
+            retire(old);
+        Entry<K, V> entry = written.get();
+        if (entry != null && result == entry)
+            changes.add(() -> schedule(entry));
+        return result == null ? null : result.value;
+    }
+
+    /**
+     * Turns the timing wheel up to now and removes every entry that has expired, waiting for a writer
+     * that is doing the same.
+     */
+    public void expire() {
+        changes.drainNow();
+    }
+
+    // Number of entries removed because they expired, by get() or by the timing wheel.
+    public long expirationCount() {
+        return expirations.sum();
+    }
+
+    private void retire(Entry<K, V> e) {
+        e.retired = true;
+        changes.add(() -> wheel.cancel(e));
+    }
+
+    private void schedule(Entry<K, V> e) {
+        if (!e.retired)
+            wheel.schedule(e, e.expires);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void expireDue() {
+        wheel.advance(ticker.getAsLong(), t -> {
+            Entry<K, V> e = (Entry<K, V>) t;
+            if (map.remove(e.key, e))
+                expirations.increment();
+            e.retired = true;
+        });
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long estimatedSize() {
+        return map.estimatedSize();
+    }
+
+    public void resize(int new_num_buckets) {
+        map.resize(new_num_buckets);
+    }
+
+    public int getArraySize() {
+        return map.getArraySize();
+    }
+
+    /**
+     * Skips entries that have expired by the time the iterator is created.
+     */
+    public Iterator<KeyValue<K, V>> iterator() {
+        long now = ticker.getAsLong();
+        Iterator<KeyValue<K, Entry<K, V>>> entries = map.iterator();
+        return new Iterator<KeyValue<K, V>>() {
+            private KeyValue<K, V> next = advance();
+
+            private KeyValue<K, V> advance() {
+                while (entries.hasNext()) {
+                    KeyValue<K, Entry<K, V>> kv = entries.next();
+                    if (!kv.value.expiredAt(now))
+                        return new KeyValue<K, V>(kv.key, kv.value.value);
+                }
+                return null;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public KeyValue<K, V> next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                KeyValue<K, V> kv = next;
+                next = advance();
+                return kv;
+            }
+        };
+    }
+}
@@ -0,0 +1,247 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * The hand-over-hand (lock coupling) Chain from Q4 and Q5. Every node has its own lock and a thread
+ * always holds the locks of two adjacent nodes while it moves along the chain, so threads working
+ * on different parts of the same chain do not block each other.
+ * With waitFreeGet, add() and remove() still couple locks but get() takes none: it follows the
+ * volatile next references, which only ever point to fully initialized nodes, and ignores a node
+ * that remove() has marked. Lookups then never wait behind a writer further up the chain.
+ */
+class HandOverHandChain<K, V> implements Bucket<K, V> {
+    private Node head;
+    private final LongAdder counter;
+    private final boolean waitFreeGet;
+
+    // This iterator is only required for Q6 and
+    // may otherwise be ignored.
+    public class ChainIterator implements java.util.Iterator<KeyValue<K, V>> {
+        // Read one node ahead, so that a remove() between hasNext() and next() cannot leave next()
+        // returning the tail sentinel.
+        private Node next;
+
+        public ChainIterator() {
+            next = head.next;
+        }
+
+        public boolean hasNext() {
+            return next != null
+                    && next.hash != Integer.MAX_VALUE;
+        }
+
+        public KeyValue<K, V> next() {
+            Node cur = next;
+            next = cur.next;
+            return new KeyValue<K, V>(cur.key, cur.value);
+        }
+    }
+
+    public java.util.Iterator<KeyValue<K, V>> iterator() {
+        return new ChainIterator();
+    }
+
+    private class Node extends NodeLock {
+        int hash;
+        K key;
+        volatile V value;
+        volatile Node next;
+        /**
+         * Set by remove() before it unlinks the node, only read by the wait-free get().
+         */
+        volatile boolean marked;
+
+        public Node(int hash) {
+            this.hash = hash;
+            this.key = null;
+            this.value = null;
+            this.next = null;
+        }
+
+        public Node(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = null;
+        }
+    }
+
+    public HandOverHandChain() {
+        this(new LongAdder());
+    }
+
+    public HandOverHandChain(LongAdder counter) {
+        this(counter, false);
+    }
+
+    public HandOverHandChain(LongAdder counter, boolean waitFreeGet) {
+        this.counter = counter;
+        this.waitFreeGet = waitFreeGet;
+        /*
+            Setting head to MAX and tail to MIN Integers because this will let us know if we are
+            at the end of the chain. We may need to add something or remove something.
+         */
+        Node tail = new Node(Integer.MAX_VALUE);
+        head = new Node(Integer.MIN_VALUE);
+        head.next = tail;
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        // Require key != null and value != null
+        int hash = key.hashCode(); // hashCode of entry to be added
+        head.lock(); // lock the first node in the chain
+        Node pred = head; // set the first node to pred
+        try {
+            Node curr = pred.next; // set the next node to curr (this could be tail if nothing has been added yet)
+            curr.lock(); // lock the next node in the list (Again, as above!)
+            try {
+                while (curr.hash < hash) { //Are we at the position in the chain where we want to add the node? False = yes we are, True = no, continue
+                    pred.unlock(); // we know we want to add there entry after curr at this point so we can unlock pred for another thread and move to acquiring the next lock for the node in the chain.
+                    pred = curr;
+                    curr = curr.next;
+                    curr.lock();
+                }
+                if (hash == curr.hash) {
+                    curr.value = value; //the key is present, update value.
+                    return false;
+                }
+                Node node = new Node(hash, key, value);
+                node.next = curr;
+                pred.next = node;
+                counter.increment();
+                return true;
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        // Require key != null
+        Node pred = null, curr = null;
+        // Get hash code
+        int hash = key.hashCode();
+        if (waitFreeGet) {
+            curr = head.next;
+            while (curr.hash < hash) {
+                curr = curr.next;
+            }
+            return hash == curr.hash && !curr.marked ? curr.value : null;
+        }
+        head.lock();
+        try {
+            pred = head;
+            curr = pred.next;
+            curr.lock();
+            try {
+                while (curr.hash < hash) {
+                    pred.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    curr.lock();
+                }
+                if (hash == curr.hash) {
+                    return curr.value;
+                }
+                return null;
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        Node pred = null;
+        Node curr = null;
+        // Require key != null
+        // Get hash code
+        int hash = key.hashCode();
+        head.lock();
+        try {
+            pred = head;
+            curr = pred.next;
+            curr.lock();
+            try {
+                while(curr.hash < hash) {
+                    pred.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    curr.lock();
+                }
+                if (hash == curr.hash) { // key present, update value
+                    curr.marked = true;
+                    pred.next = curr.next; // remove reference
+                    counter.decrement();
+                    return true;
+                }
+                return false; //key not found
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    // Find key once and apply remapping to its value while holding the locks of pred and curr.
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        Node pred = null;
+        Node curr = null;
+        int hash = key.hashCode();
+        head.lock();
+        try {
+            pred = head;
+            curr = pred.next;
+            curr.lock();
+            try {
+                while (curr.hash < hash) {
+                    pred.unlock();
+                    pred = curr;
+                    curr = curr.next;
+                    curr.lock();
+                }
+                if (hash == curr.hash) {
+                    V value = remapping.apply(key, curr.value);
+                    if (value != null) {
+                        curr.value = value;
+                    } else {
+                        curr.marked = true;
+                        pred.next = curr.next;
+                        counter.decrement();
+                    }
+                    return value;
+                }
+                V value = remapping.apply(key, null);
+                if (value != null) {
+                    Node node = new Node(hash, key, value);
+                    node.next = curr;
+                    pred.next = node;
+                    counter.increment();
+                }
+                return value;
+            } finally {
+                curr.unlock();
+            }
+        } finally {
+            pred.unlock();
+        }
+    }
+
+    public int size() {
+        int size = 0;
+
+        Node n = head.next;
+        while (n.next != null) {
+            size++;
+            n = n.next;
+        }
+        return size;
+    }
+}
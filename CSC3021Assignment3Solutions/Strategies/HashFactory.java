@@ -0,0 +1,260 @@
+/**
+ * Creates a ConcurrentHash for a synchronization strategy chosen by name, so the strategy can be
+ * picked per workload at runtime (for example with -Dhash.strategy=lazy) instead of by compiling a
+ * different solution directory.
+ */
+public final class HashFactory {
+    /**
+     * The system property read by create(int) to choose a strategy.
+     */
+    public static final String STRATEGY_PROPERTY = "hash.strategy";
+    public static final Strategy DEFAULT_STRATEGY = Strategy.LAZY;
+
+    public enum Strategy {
+        /**
+         * Q1: synchronized Hash over unsynchronized chains.
+         */
+        COARSE("coarse", true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new CoarseHash<K, V>(num_buckets, CoarseChain::new, policy);
+            }
+        },
+        /**
+         * Q2: one ReentrantLock per chain.
+         */
+        CHAIN_LOCK("chain-lock", false, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new ChainedHash<K, V>(num_buckets, padded ? PaddedChains.Locked::new : LockedChain::new);
+            }
+        },
+        /**
+         * Q3: one ReentrantReadWriteLock per chain.
+         */
+        CHAIN_RW_LOCK("chain-rwlock", false, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new ChainedHash<K, V>(num_buckets, padded ? PaddedChains.ReadWrite::new : ReadWriteChain::new);
+            }
+        },
+        /**
+         * Q3 with a StampedLock per chain: optimistic, lock-free lookups.
+         */
+        CHAIN_STAMPED("chain-stamped", false, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new ChainedHash<K, V>(num_buckets, padded ? PaddedChains.Stamped::new : StampedChain::new);
+            }
+        },
+        /**
+         * Q4: hand-over-hand locking chains under the unsynchronized Hash.
+         */
+        HAND_OVER_HAND("hand-over-hand", false, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new ChainedHash<K, V>(num_buckets, counter -> padded
+                        ? new PaddedChains.HandOverHand<K, V>(counter, false)
+                        : new HandOverHandChain<K, V>(counter));
+            }
+        },
+        /**
+         * Q4 with wait-free lookups: only add and remove couple locks.
+         */
+        HAND_OVER_HAND_WAIT_FREE_GET("hand-over-hand-wfget", false, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new ChainedHash<K, V>(num_buckets, counter -> padded
+                        ? new PaddedChains.HandOverHand<K, V>(counter, true)
+                        : new HandOverHandChain<K, V>(counter, true));
+            }
+        },
+        /**
+         * Q5: hand-over-hand locking chains under the RCU-style Hash.
+         */
+        RCU_HAND_OVER_HAND("rcu-hand-over-hand", true, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new RcuHash<K, V>(num_buckets, counter -> padded
+                        ? new PaddedChains.HandOverHand<K, V>(counter, false)
+                        : new HandOverHandChain<K, V>(counter), policy);
+            }
+        },
+        /**
+         * Q5 with wait-free lookups: only add and remove couple locks.
+         */
+        RCU_HAND_OVER_HAND_WAIT_FREE_GET("rcu-hand-over-hand-wfget", true, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new RcuHash<K, V>(num_buckets, counter -> padded
+                        ? new PaddedChains.HandOverHand<K, V>(counter, true)
+                        : new HandOverHandChain<K, V>(counter, true), policy);
+            }
+        },
+        /**
+         * Q5b: optimistic chains under the RCU-style Hash.
+         */
+        OPTIMISTIC("optimistic", true, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new RcuHash<K, V>(num_buckets, padded ? PaddedChains.Optimistic::new : OptimisticChain::new, policy);
+            }
+        },
+        /**
+         * Q5b with constant-time validation and lock-free lookups, under the RCU-style Hash.
+         */
+        OPTIMISTIC_VERSIONED("optimistic-versioned", true, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new RcuHash<K, V>(num_buckets,
+                        padded ? PaddedChains.VersionedOptimistic::new : VersionedOptimisticChain::new, policy);
+            }
+        },
+        /**
+         * Q5c: lazy chains under the RCU-style Hash.
+         */
+        LAZY("lazy", true, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new RcuHash<K, V>(num_buckets, padded ? PaddedChains.Lazy::new : LazyChain::new, policy);
+            }
+        },
+        /**
+         * Lock-free (Harris-Michael) chains under the RCU-style Hash.
+         */
+        LOCK_FREE("lock-free", true, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new RcuHash<K, V>(num_buckets, padded ? PaddedChains.LockFree::new : LockFreeChain::new, policy);
+            }
+        },
+        /**
+         * Lazy chains that turn into skip lists when they get long, under the RCU-style Hash.
+         */
+        TREEIFY("treeify", true, true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new RcuHash<K, V>(num_buckets, padded ? PaddedChains.Treeifying::new : TreeifyingChain::new, policy);
+            }
+        },
+        /**
+         * One lock-free split-ordered list with lazily initialized bucket sentinels.
+         */
+        SPLIT_ORDERED("split-ordered", true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new SplitOrderedHash<K, V>(num_buckets, policy);
+            }
+        },
+        /**
+         * Unsynchronized chains guarded by a refinable array of lock stripes.
+         */
+        STRIPED("striped", true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new StripedHash<K, V>(num_buckets, policy);
+            }
+        },
+        /**
+         * Two-table cuckoo hashing with striped locks, it sizes itself and ignores the policy.
+         */
+        CUCKOO("cuckoo", true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new CuckooHash<K, V>(num_buckets);
+            }
+        },
+        /**
+         * Open addressing with hopscotch neighbourhoods and segment locks, it sizes itself and ignores the policy.
+         */
+        HOPSCOTCH("hopscotch", true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new HopscotchHash<K, V>(num_buckets);
+            }
+        },
+        /**
+         * Lock-free skip list ordered by the keys' natural ordering, it has no buckets and ignores the policy.
+         */
+        SKIP_LIST("skip-list", true) {
+            <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded) {
+                return new SkipListMap<K, V>();
+            }
+        };
+
+        private final String strategyName;
+        private final boolean concurrentResize;
+        private final boolean paddedBuckets;
+
+        Strategy(String strategyName, boolean concurrentResize) {
+            this(strategyName, concurrentResize, false);
+        }
+
+        Strategy(String strategyName, boolean concurrentResize, boolean paddedBuckets) {
+            this.strategyName = strategyName;
+            this.concurrentResize = concurrentResize;
+            this.paddedBuckets = paddedBuckets;
+        }
+
+        /**
+         * The Q2, Q3 and Q4 Hash cannot resize while other threads use it, so those strategies
+         * ignore the policy and keep a fixed number of buckets. padded asks for the chains of
+         * PaddedChains, and is ignored by the strategies that do not support them.
+         */
+        abstract <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy, boolean padded);
+
+        public String getName() {
+            return strategyName;
+        }
+
+        /**
+         * Whether resize() may be called while other threads are using the table.
+         */
+        public boolean supportsConcurrentResize() {
+            return concurrentResize;
+        }
+
+        /**
+         * Whether the strategy can lay its chains out padded, so that neighbouring buckets do not
+         * share cache lines. Only the strategies whose chains do their own locking can.
+         */
+        public boolean supportsPaddedBuckets() {
+            return paddedBuckets;
+        }
+
+        public static Strategy forName(String name) {
+            for (Strategy strategy : values()) {
+                if (strategy.strategyName.equals(name))
+                    return strategy;
+            }
+            StringBuilder names = new StringBuilder();
+            for (Strategy strategy : values()) {
+                if (names.length() > 0)
+                    names.append(", ");
+                names.append(strategy.strategyName);
+            }
+            throw new IllegalArgumentException("Unknown hash strategy '" + name + "', expected one of: " + names);
+        }
+    }
+
+    private HashFactory() {
+    }
+
+    public static <K, V> ConcurrentHash<K, V> create(Strategy strategy, int num_buckets, ResizePolicy policy) {
+        return create(strategy, num_buckets, policy, false);
+    }
+
+    /**
+     * As create(strategy, num_buckets, policy), with the chains padded against false sharing if padded
+     * is true and the strategy supportsPaddedBuckets().
+     */
+    public static <K, V> ConcurrentHash<K, V> create(Strategy strategy, int num_buckets, ResizePolicy policy,
+                                                     boolean padded) {
+        return strategy.create(num_buckets, policy, padded);
+    }
+
+    public static <K, V> ConcurrentHash<K, V> create(Strategy strategy, int num_buckets) {
+        return create(strategy, num_buckets, ResizePolicy.DEFAULT);
+    }
+
+    public static <K, V> ConcurrentHash<K, V> create(String strategyName, int num_buckets) {
+        return create(Strategy.forName(strategyName), num_buckets);
+    }
+
+    /**
+     * Creates a table using the strategy named by the hash.strategy system property,
+     * or DEFAULT_STRATEGY if it is not set.
+     */
+    public static <K, V> ConcurrentHash<K, V> create(int num_buckets) {
+        return create(num_buckets, ResizePolicy.DEFAULT);
+    }
+
+    // As create(num_buckets), resizing by policy.
+    public static <K, V> ConcurrentHash<K, V> create(int num_buckets, ResizePolicy policy) {
+        String name = System.getProperty(STRATEGY_PROPERTY);
+        return create(name == null ? DEFAULT_STRATEGY : Strategy.forName(name), num_buckets, policy);
+    }
+}
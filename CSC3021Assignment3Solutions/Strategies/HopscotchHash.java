@@ -0,0 +1,490 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+
+/**
+ * A concurrent hopscotch Hash (Herlihy, Shavit and Tzafrir). There are no chains and no nodes: every
+ * entry lives in one slot of a flat array, within HOP_RANGE slots of its home bucket, and each home
+ * bucket keeps a bitmap of which of those slots hold its entries. A key and its value sit next to each
+ * other in one array, so a lookup reads the bitmap and then one or two cache lines of slots.
+ * add() looks for a free slot after the home bucket and, if it is too far away, moves ("hops") entries
+ * of other buckets into it until the free slot is inside the neighbourhood of the home bucket.
+ * Writers lock contiguous segments of slots, always in ascending order. get() takes no lock: it
+ * reads the timestamp of its home bucket's segment, which is incremented whenever an entry of that
+ * segment is moved or removed, and tries again if the timestamp changed while it was looking.
+ * This table decides its own size (it grows when it is MAX_LOAD full or an add finds no room), so it
+ * does not use a ResizePolicy. Growing cannot separate keys whose hash codes share a home bucket at
+ * every capacity, so an entry that finds no room while the table is mostly empty goes into the overflow
+ * list of its home bucket's segment instead, which lookups only walk after missing the neighbourhood.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the table.
+ * @param <V> This is the value. It will be associated with a key in the table.
+ */
+public class HopscotchHash<K, V> implements ConcurrentHash<K, V> {
+    /**
+     * Size of a neighbourhood, one bit of the bitmap per slot.
+     */
+    private static final int HOP_RANGE = 32;
+    /**
+     * How far add() looks for a free slot before it gives up and the table is resized.
+     */
+    private static final int ADD_RANGE = 512;
+    private static final int SEGMENT_SIZE = 64;
+    private static final double MAX_LOAD = 0.9;
+    /**
+     * Below this load an add that finds no room is caused by colliding hash codes, not by a full table,
+     * so the entry overflows instead of the table growing.
+     */
+    private static final double MIN_LOAD_TO_GROW = 0.25;
+
+    private volatile Table table;
+    private final LongAdder count = new LongAdder();
+
+    private static final class Table {
+        /**
+         * Number of home buckets. There are HOP_RANGE - 1 more slots after the last home bucket, so a
+         * neighbourhood never wraps around and writers can always lock segments in ascending order.
+         */
+        final int capacity;
+        final int length;
+        final AtomicIntegerArray hopInfo;
+        final AtomicIntegerArray hashes;
+        /**
+         * Slot i holds its key at 2 * i and its value at 2 * i + 1, a null key means the slot is free.
+         */
+        final AtomicReferenceArray<Object> entries;
+        final ReentrantLock[] locks;
+        final AtomicIntegerArray timestamps;
+        /**
+         * The entries of each segment's home buckets that found no room in their neighbourhood. A list
+         * is guarded by its segment's lock and replaced rather than changed, so get() reads it without.
+         */
+        final AtomicReferenceArray<Overflow> overflow;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            length = capacity + HOP_RANGE - 1;
+            hopInfo = new AtomicIntegerArray(capacity);
+            hashes = new AtomicIntegerArray(length);
+            entries = new AtomicReferenceArray<Object>(2 * length);
+            int num_segments = (length + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+            locks = new ReentrantLock[num_segments];
+            for (int i = 0; i < num_segments; ++i)
+                locks[i] = new ReentrantLock();
+            timestamps = new AtomicIntegerArray(num_segments);
+            overflow = new AtomicReferenceArray<Overflow>(num_segments);
+        }
+
+        int segment(int slot) {
+            return slot / SEGMENT_SIZE;
+        }
+
+        boolean isFree(int slot) {
+            return entries.get(2 * slot) == null;
+        }
+    }
+
+    private static final class Overflow {
+        final int hash;
+        final Object key;
+        final Object value;
+        final Overflow next;
+
+        Overflow(int hash, Object key, Object value, Overflow next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    public HopscotchHash(int num_buckets_) {
+        table = new Table(Math.max(1, num_buckets_));
+    }
+
+    /**
+     * Mixes every bit of the hash code into the low bits the home bucket is taken from (the finaliser
+     * of MurmurHash3). Folding the high half in with a single xor is not enough: it maps -1 to -n onto
+     * the same homes as 0 to n - 1 for every power of two capacity, so growing never separates them.
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & 0x7FFFFFFF;
+    }
+
+    /**
+     * Returns the slot that holds key in the neighbourhood of home, or -1.
+     */
+    private static int find(Table t, int home, int hash, Object key) {
+        int hop = t.hopInfo.get(home);
+        while (hop != 0) {
+            int slot = home + Integer.numberOfTrailingZeros(hop);
+            hop &= hop - 1;
+            if (t.hashes.get(slot) == hash) {
+                Object k = t.entries.get(2 * slot);
+                if (k != null && k.equals(key))
+                    return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Moves an entry whose home bucket is before free, and that sits before free, into free.
+     * Returns the slot it moved out of, which is now free and closer to the start, or -1 if no entry
+     * can move. The caller holds the segments of every slot between the home buckets and free.
+     */
+    private static int moveCloser(Table t, int free) {
+        for (int c = free - HOP_RANGE + 1; c < free && c < t.capacity; ++c) {
+            int hop = t.hopInfo.get(c);
+            for (int j = 0; c + j < free; ++j) {
+                if ((hop & (1 << j)) == 0)
+                    continue;
+                int from = c + j;
+                t.hashes.set(free, t.hashes.get(from));
+                t.entries.set(2 * free + 1, t.entries.get(2 * from + 1));
+                t.entries.set(2 * free, t.entries.get(2 * from));
+                hop |= 1 << (free - c);
+                t.hopInfo.set(c, hop);
+                // before the old slot is cleared, so a get() that misses the entry sees the change
+                t.timestamps.incrementAndGet(t.segment(c));
+                t.hopInfo.set(c, hop & ~(1 << j));
+                t.entries.set(2 * from, null);
+                t.entries.set(2 * from + 1, null);
+                return from;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hops entries until free is in the neighbourhood of home, then stores the entry there.
+     * Returns false, having only moved other entries around, if that is not possible.
+     */
+    private static boolean store(Table t, int home, int free, int hash, Object key, Object value) {
+        while (free - home >= HOP_RANGE) {
+            free = moveCloser(t, free);
+            if (free < 0)
+                return false;
+        }
+        t.hashes.set(free, hash);
+        t.entries.set(2 * free + 1, value);
+        t.entries.set(2 * free, key);
+        t.hopInfo.set(home, t.hopInfo.get(home) | (1 << (free - home)));
+        return true;
+    }
+
+    /**
+     * Removes the entry in slot from the neighbourhood of home. Only the home segment is locked, but
+     * slot may lie in the next segment, where an add() holding that segment's lock takes the first slot
+     * whose key it sees null. The value is cleared before the key, so the slot only looks free once
+     * it is empty and nothing that add() stores there is overwritten.
+     */
+    private static void clear(Table t, int home, int slot) {
+        t.timestamps.incrementAndGet(t.segment(home));
+        t.hopInfo.set(home, t.hopInfo.get(home) & ~(1 << (slot - home)));
+        t.entries.set(2 * slot + 1, null);
+        t.entries.set(2 * slot, null);
+    }
+
+    /**
+     * Returns the overflow entry of key, whose home bucket is home, or null.
+     */
+    private static Overflow findOverflow(Table t, int home, int hash, Object key) {
+        for (Overflow o = t.overflow.get(t.segment(home)); o != null; o = o.next)
+            if (o.hash == hash && o.key.equals(key))
+                return o;
+        return null;
+    }
+
+    /**
+     * Replaces the overflow entry of key with value, removing it if value is null. The caller holds the
+     * lock of home's segment.
+     */
+    private static void setOverflow(Table t, int home, int hash, Object key, Object value) {
+        int segment = t.segment(home);
+        Overflow list = without(t.overflow.get(segment), hash, key);
+        t.overflow.set(segment, value == null ? list : new Overflow(hash, key, value, list));
+    }
+
+    // A copy of list without key, sharing the part after it.
+    private static Overflow without(Overflow list, int hash, Object key) {
+        if (list == null)
+            return null;
+        if (list.hash == hash && list.key.equals(key))
+            return list.next;
+        return new Overflow(list.hash, list.key, list.value, without(list.next, hash, key));
+    }
+
+    public int getArraySize() {
+        return table.capacity;
+    }
+
+    /**
+     * Resizes to new_num_buckets home buckets, or to as many as the entries need if that is more.
+     */
+    public void resize(int new_num_buckets) {
+        while (!resize(table, Math.max(1, new_num_buckets))) {
+            // another resize got there first, resize the table it made
+        }
+    }
+
+    /**
+     * Locks every segment of t and copies its entries into a new table. Returns false if t is no longer
+     * the current table.
+     */
+    private boolean resize(Table t, int new_num_buckets) {
+        for (ReentrantLock lock : t.locks)
+            lock.lock();
+        try {
+            if (t != table)
+                return false;
+            // every entry needs a slot of its own, count is exact while every segment is locked
+            new_num_buckets = (int) Math.min(ResizePolicy.MAX_BUCKETS,
+                    Math.max(new_num_buckets, (long) Math.ceil(count.sum() / MAX_LOAD)));
+            table = rehash(t, new_num_buckets);
+            return true;
+        } finally {
+            for (ReentrantLock lock : t.locks)
+                lock.unlock();
+        }
+    }
+
+    /**
+     * Only used while every segment of the old table is locked and before the new table is published.
+     * The overflow entries are placed again too, so they leave the overflow lists once there is room.
+     */
+    private static Table rehash(Table t, int new_num_buckets) {
+        Table next = new Table(new_num_buckets);
+        for (int slot = 0; slot < t.length; ++slot) {
+            Object key = t.entries.get(2 * slot);
+            if (key != null)
+                place(next, t.hashes.get(slot), key, t.entries.get(2 * slot + 1));
+        }
+        for (int segment = 0; segment < t.locks.length; ++segment)
+            for (Overflow o = t.overflow.get(segment); o != null; o = o.next)
+                place(next, o.hash, o.key, o.value);
+        return next;
+    }
+
+    // Stores an entry in a table nobody else can see yet, in the overflow if there is no room.
+    private static void place(Table t, int hash, Object key, Object value) {
+        int home = hash % t.capacity;
+        int free = home;
+        int limit = Math.min(t.length, home + ADD_RANGE);
+        while (free < limit && !t.isFree(free))
+            free++;
+        if (free == limit || !store(t, home, free, hash, key, value))
+            setOverflow(t, home, hash, key, value);
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        int hash = spread(key.hashCode());
+        while (true) {
+            Table t = table;
+            int home = hash % t.capacity;
+            int first = t.segment(home);
+            int last = first;
+            t.locks[first].lock();
+            try {
+                if (t != table)
+                    continue;
+                if (find(t, home, hash, key) >= 0 || findOverflow(t, home, hash, key) != null)
+                    return false;
+                // look for a free slot, locking each segment before looking at its slots
+                int free = home;
+                int limit = Math.min(t.length, home + ADD_RANGE);
+                while (free < limit) {
+                    if (t.segment(free) > last)
+                        t.locks[++last].lock();
+                    if (t.isFree(free))
+                        break;
+                    free++;
+                }
+                if (free < limit && store(t, home, free, hash, key, value)) {
+                    count.increment();
+                    break;
+                }
+                // a table this empty has no room only when too many hash codes collide
+                if (count.sum() < t.capacity * MIN_LOAD_TO_GROW) {
+                    setOverflow(t, home, hash, key, value);
+                    count.increment();
+                    break;
+                }
+            } finally {
+                for (int s = last; s >= first; --s)
+                    t.locks[s].unlock();
+            }
+            // no room in range, grow and try again
+            resize(t, t.capacity * 2);
+        }
+        Table t = table;
+        if (count.sum() > t.capacity * MAX_LOAD)
+            resize(t, t.capacity * 2);
+        return true;
+    }
+
+    /**
+     * Notice a reading thread will not be required to wait. If an entry of its home bucket was
+     * moved or removed while it was looking, it looks again. The overflow list is only walked if the
+     * key is not in the neighbourhood.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        int hash = spread(key.hashCode());
+        Table t = table;
+        int home = hash % t.capacity;
+        int segment = t.segment(home);
+        while (true) {
+            int stamp = t.timestamps.get(segment);
+            int slot = find(t, home, hash, key);
+            Object value = slot < 0 ? null : t.entries.get(2 * slot + 1);
+            if (t.timestamps.get(segment) == stamp) {
+                if (slot >= 0)
+                    return (V) value;
+                Overflow o = findOverflow(t, home, hash, key);
+                return o == null ? null : (V) o.value;
+            }
+        }
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        int hash = spread(key.hashCode());
+        while (true) {
+            Table t = table;
+            int home = hash % t.capacity;
+            ReentrantLock lock = t.locks[t.segment(home)];
+            lock.lock();
+            try {
+                if (t != table)
+                    continue;
+                int slot = find(t, home, hash, key);
+                if (slot >= 0)
+                    clear(t, home, slot);
+                else if (findOverflow(t, home, hash, key) != null)
+                    setOverflow(t, home, hash, key, null);
+                else
+                    return false;
+                count.decrement();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Holds the lock of the key's home segment while it applies remapping, and the segments up to a
+     * free slot while it adds a new entry, as add() does. If there is no room for a new entry the table
+     * grows and remapping is applied again in the new table.
+     */
+    @SuppressWarnings("unchecked")
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = spread(key.hashCode());
+        V value;
+        while (true) {
+            Table t = table;
+            int home = hash % t.capacity;
+            int first = t.segment(home);
+            int last = first;
+            t.locks[first].lock();
+            try {
+                if (t != table)
+                    continue;
+                int slot = find(t, home, hash, key);
+                if (slot >= 0) {
+                    V old = (V) t.entries.get(2 * slot + 1);
+                    value = remapping.apply(key, old);
+                    if (value == null) {
+                        clear(t, home, slot);
+                        count.decrement();
+                    } else if (value != old) {
+                        t.entries.set(2 * slot + 1, value);
+                    }
+                    return value;
+                }
+                Overflow o = findOverflow(t, home, hash, key);
+                if (o != null) {
+                    value = remapping.apply(key, (V) o.value);
+                    if (value == null)
+                        count.decrement();
+                    if (value != o.value)
+                        setOverflow(t, home, hash, key, value);
+                    return value;
+                }
+                value = remapping.apply(key, null);
+                if (value == null)
+                    return null;
+                int free = home;
+                int limit = Math.min(t.length, home + ADD_RANGE);
+                while (free < limit) {
+                    if (t.segment(free) > last)
+                        t.locks[++last].lock();
+                    if (t.isFree(free))
+                        break;
+                    free++;
+                }
+                if (free < limit && store(t, home, free, hash, key, value)) {
+                    count.increment();
+                    break;
+                }
+                if (count.sum() < t.capacity * MIN_LOAD_TO_GROW) {
+                    setOverflow(t, home, hash, key, value);
+                    count.increment();
+                    break;
+                }
+            } finally {
+                for (int s = last; s >= first; --s)
+                    t.locks[s].unlock();
+            }
+            resize(t, t.capacity * 2);
+        }
+        Table t = table;
+        if (count.sum() > t.capacity * MAX_LOAD)
+            resize(t, t.capacity * 2);
+        return value;
+    }
+
+    public int size() {
+        return (int) count.sum();
+    }
+
+    /**
+     * Copies the entries while holding every segment lock, so the copy is a consistent snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    public Iterator<KeyValue<K, V>> iterator() {
+        List<KeyValue<K, V>> entries = new ArrayList<KeyValue<K, V>>();
+        while (true) {
+            Table t = table;
+            for (ReentrantLock lock : t.locks)
+                lock.lock();
+            try {
+                if (t != table)
+                    continue;
+                for (int slot = 0; slot < t.length; ++slot) {
+                    Object key = t.entries.get(2 * slot);
+                    if (key != null)
+                        entries.add(new KeyValue<K, V>((K) key, (V) t.entries.get(2 * slot + 1)));
+                }
+                for (int segment = 0; segment < t.locks.length; ++segment)
+                    for (Overflow o = t.overflow.get(segment); o != null; o = o.next)
+                        entries.add(new KeyValue<K, V>((K) o.key, (V) o.value));
+                return entries.iterator();
+            } finally {
+                for (ReentrantLock lock : t.locks)
+                    lock.unlock();
+            }
+        }
+    }
+}
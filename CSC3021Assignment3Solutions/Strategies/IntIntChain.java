@@ -0,0 +1,131 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Q5c lazy Chain specialized for int keys and int values, so nothing is boxed. The chain is sorted
+ * by the key itself rather than by its hash code, and the tail is recognised by identity instead of by
+ * a sentinel value, so every int (including Integer.MIN_VALUE and Integer.MAX_VALUE) is a valid key.
+ * Nodes are locked with their own monitor, so add() allocates nothing but the node and get(), contains()
+ * and remove() allocate nothing at all.
+ */
+class IntIntChain {
+    private final Node head;
+    private final Node tail;
+    private final LongAdder counter;
+
+    private static final class Node {
+        final int key;
+        final int value;
+        volatile boolean marked;
+        volatile Node next;
+
+        Node(int key, int value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    public IntIntChain() {
+        this(new LongAdder());
+    }
+
+    public IntIntChain(LongAdder counter) {
+        this.counter = counter;
+        tail = new Node(0, 0);
+        head = new Node(0, 0);
+        head.next = tail;
+    }
+
+    /**
+     * Returns the last node before key, the first node at or after key is pred.next.
+     */
+    private Node findPred(int key) {
+        Node pred = head;
+        Node curr = head.next;
+        while (curr != tail && curr.key < key) {
+            pred = curr;
+            curr = curr.next;
+        }
+        return pred;
+    }
+
+    // Insert value for key.
+    public boolean add(int key, int value) {
+        while (true) {
+            Node pred = findPred(key);
+            Node curr = pred.next;
+            synchronized (pred) {
+                synchronized (curr) {
+                    if (validate(pred, curr)) {
+                        if (curr != tail && curr.key == key) {
+                            return false;
+                        } else {
+                            Node node = new Node(key, value);
+                            node.next = curr;
+                            pred.next = node;
+                            counter.increment();
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Lookup value for key, wait-free.
+    public int getOrDefault(int key, int defaultValue) {
+        Node curr = head.next;
+        while (curr != tail && curr.key < key) {
+            curr = curr.next;
+        }
+        return curr != tail && curr.key == key && !curr.marked ? curr.value : defaultValue;
+    }
+
+    public boolean contains(int key) {
+        Node curr = head.next;
+        while (curr != tail && curr.key < key) {
+            curr = curr.next;
+        }
+        return curr != tail && curr.key == key && !curr.marked;
+    }
+
+    // Remove key/value pair
+    public boolean remove(int key) {
+        while (true) {
+            Node pred = findPred(key);
+            Node curr = pred.next;
+            synchronized (pred) {
+                synchronized (curr) {
+                    if (validate(pred, curr)) {
+                        if (curr == tail || curr.key != key) {
+                            return false;
+                        } else {
+                            curr.marked = true;
+                            pred.next = curr.next;
+                            counter.decrement();
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean validate(Node pred, Node curr) {
+        return !pred.marked && !curr.marked && pred.next == curr;
+    }
+
+    /**
+     * Calls action for every entry, in key order. Entries added or removed while it runs may or may not be seen.
+     */
+    void forEach(IntIntHash.EntryConsumer action) {
+        for (Node n = head.next; n != tail; n = n.next)
+            action.accept(n.key, n.value);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Node n = head.next; n != tail; n = n.next)
+            size++;
+        return size;
+    }
+}
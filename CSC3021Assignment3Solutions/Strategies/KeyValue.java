@@ -0,0 +1,14 @@
+/**
+ * A key/value pair handed out by the iterators of every Bucket and ConcurrentHash.
+ * This replaces the Chain.KeyValue inner class of the solution directories so that
+ * entries can be passed between different chain implementations.
+ */
+public class KeyValue<K, V> {
+    public K key;
+    public V value;
+
+    public KeyValue(K key, V value) {
+        this.key = key;
+        this.value = value;
+    }
+}
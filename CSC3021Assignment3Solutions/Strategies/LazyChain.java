@@ -0,0 +1,215 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * The Chain from Q5c, using lazy synchronization so that get() calls are wait-free, and add() and remove()
+ * methods, while still blocking, traverse the chain only once (in the absence of contention).
+ */
+class LazyChain<K, V> implements Bucket<K, V> {
+    private Node head;
+    private final LongAdder counter;
+
+    // This iterator is only required for Q6 and
+    // may otherwise be ignored.
+    public class ChainIterator implements java.util.Iterator<KeyValue<K, V>> {
+        // Read one node ahead, so that a remove() between hasNext() and next() cannot leave next()
+        // returning the tail sentinel.
+        private Node next;
+
+        public ChainIterator() {
+            next = head.next;
+        }
+
+        public boolean hasNext() {
+            return next != null
+                    && next.hash != Integer.MAX_VALUE;
+        }
+
+        public KeyValue<K, V> next() {
+            Node cur = next;
+            next = cur.next;
+            return new KeyValue<K, V>(cur.key, cur.value);
+        }
+    }
+
+    public java.util.Iterator<KeyValue<K, V>> iterator() {
+        return new ChainIterator();
+    }
+
+    private class Node extends NodeLock {
+        int hash;
+        boolean marked;
+        K key;
+        /**
+        * Volatile so that the wait-free get() sees a value replaced by compute().
+        */
+        volatile V value;
+        Node next;
+
+        public Node(int hash) {
+            this.hash = hash;
+            this.marked = false;
+            this.key = null;
+            this.value = null;
+            this.next = null;
+        }
+
+        public Node(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = null;
+        }
+    }
+
+    public LazyChain() {
+        this(new LongAdder());
+    }
+
+    public LazyChain(LongAdder counter) {
+        this.counter = counter;
+        /*
+            Setting head to MAX and tail to MIN Integers because this will let us know if we are
+            at the end of the chain. We may need to add something or remove a node.
+        */
+        Node tail = new Node(Integer.MAX_VALUE);
+        head = new Node(Integer.MIN_VALUE);
+        head.next = tail;
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                pred = curr; curr = curr.next;
+            }
+            pred.lock();
+            try{
+                curr.lock();
+                try {
+                    if (validate(pred, curr)) {
+                        if (curr.hash == hash) {
+                            return false;
+                        } else {
+                            Node node = new Node(hash, key, value);
+                            node.next = curr;
+                            pred.next = node;
+                            counter.increment();
+                            return true;
+                        }
+                    }
+                } finally {
+                    curr.unlock();
+                }
+            } finally {
+                pred.unlock();
+            }
+        }
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+      int hash = key.hashCode();
+        Node curr = head;
+        while (curr.hash < hash) {
+            curr = curr.next;
+        }
+        return curr.hash == hash && !curr.marked ? curr.value : null;
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            pred.lock();
+            try {
+                curr.lock();
+                try {
+                    if (validate(pred, curr)) {
+                        if (curr.hash != hash) {
+                            return false;
+                        } else {
+                            curr.marked = true;
+                            pred.next = curr.next;
+                            counter.decrement();
+                            return true;
+                        }
+                    }
+                } finally {
+                    curr.unlock();
+                }
+            } finally {
+                pred.unlock();
+            }
+        }
+    }
+
+    // Find key once and apply remapping to its value once pred and curr are locked and validated.
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            pred.lock();
+            try {
+                curr.lock();
+                try {
+                    if (validate(pred, curr)) {
+                        if (curr.hash == hash) {
+                            V value = remapping.apply(key, curr.value);
+                            if (value != null) {
+                                curr.value = value;
+                            } else {
+                                curr.marked = true;
+                                pred.next = curr.next;
+                                counter.decrement();
+                            }
+                            return value;
+                        }
+                        V value = remapping.apply(key, null);
+                        if (value != null) {
+                            Node node = new Node(hash, key, value);
+                            node.next = curr;
+                            pred.next = node;
+                            counter.increment();
+                        }
+                        return value;
+                    }
+                } finally {
+                    curr.unlock();
+                }
+            } finally {
+                pred.unlock();
+            }
+        }
+    }
+
+    private boolean validate(Node pred, Node curr) {
+        return !pred.marked && !curr.marked && pred.next == curr;
+    }
+
+    public int size() {
+        int size = 0;
+
+        Node n = head.next;
+        while (n.next != null) {
+            size++;
+            n = n.next;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,239 @@
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * A lock-free Chain (Harris and Michael). Each next reference carries a mark bit, and a node is
+ * logically removed by marking its next reference before it is physically unlinked. Any thread that
+ * comes across a marked node while traversing the chain unlinks it with a compareAndSet on the
+ * predecessor, so add() and remove() never wait on another thread, and get() is wait-free.
+ * compute() replaces a node in a single compareAndSet that marks it and points it at its replacement,
+ * so a thread that reaches the old node moves straight on to the new one.
+ */
+class LockFreeChain<K, V> implements Bucket<K, V> {
+    private Node head;
+    private final LongAdder counter;
+
+    // This iterator is only required for Q6 and
+    // may otherwise be ignored.
+    public class ChainIterator implements java.util.Iterator<KeyValue<K, V>> {
+        private Node cur;
+        // The live node found by hasNext(), kept so that next() returns it even if it has been removed
+        // since; null until hasNext() looks.
+        private Node next;
+
+        public ChainIterator() {
+            cur = head;
+        }
+
+        /**
+         * Skips over nodes that have been logically removed but not yet unlinked, and over a node with
+         * the same hash as cur: compute() links the replacement of cur right behind it, so that node
+         * holds the key just returned.
+         */
+        private Node nextLive() {
+            Node n = cur.next.getReference();
+            while (n.hash != Integer.MAX_VALUE && (n.next.isMarked() || cur != head && n.hash == cur.hash))
+                n = n.next.getReference();
+            return n;
+        }
+
+        public boolean hasNext() {
+            if (next == null)
+                next = nextLive();
+            return next.hash != Integer.MAX_VALUE;
+        }
+
+        public KeyValue<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            cur = next;
+            next = null;
+            return new KeyValue<K, V>(cur.key, cur.value);
+        }
+    }
+
+    public java.util.Iterator<KeyValue<K, V>> iterator() {
+        return new ChainIterator();
+    }
+
+    private class Node {
+        final int hash;
+        final K key;
+        final V value;
+        /**
+         * The mark on this reference means that this node (not its successor) has been removed.
+         */
+        final AtomicMarkableReference<Node> next;
+
+        public Node(int hash) {
+            this.hash = hash;
+            this.key = null;
+            this.value = null;
+            this.next = new AtomicMarkableReference<Node>(null, false);
+        }
+
+        public Node(int hash, K key, V value, Node next) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = new AtomicMarkableReference<Node>(next, false);
+        }
+    }
+
+    /**
+     * The pair of adjacent nodes found by find(): pred.hash < hash <= curr.hash.
+     */
+    private class Window {
+        final Node pred;
+        final Node curr;
+
+        Window(Node pred, Node curr) {
+            this.pred = pred;
+            this.curr = curr;
+        }
+    }
+
+    public LockFreeChain() {
+        this(new LongAdder());
+    }
+
+    public LockFreeChain(LongAdder counter) {
+        this.counter = counter;
+        /*
+            Setting head to MIN and tail to MAX Integers because this will let us know if we are
+            at the end of the chain.
+         */
+        Node tail = new Node(Integer.MAX_VALUE);
+        head = new Node(Integer.MIN_VALUE);
+        head.next.set(tail, false);
+    }
+
+    /**
+     * Finds the window for hash, unlinking every marked node it passes on the way.
+     * If unlinking fails because pred changed underneath us, the traversal starts again from head.
+     */
+    private Window find(int hash) {
+        Node pred, curr, succ;
+        boolean[] marked = {false};
+        retry:
+        while (true) {
+            pred = head;
+            curr = pred.next.getReference();
+            while (true) {
+                succ = curr.next.get(marked);
+                while (marked[0]) {
+                    if (!pred.next.compareAndSet(curr, succ, false, false))
+                        continue retry;
+                    curr = succ;
+                    succ = curr.next.get(marked);
+                }
+                if (curr.hash >= hash)
+                    return new Window(pred, curr);
+                pred = curr;
+                curr = succ;
+            }
+        }
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        int hash = key.hashCode();
+        while (true) {
+            Window window = find(hash);
+            Node pred = window.pred, curr = window.curr;
+            if (curr.hash == hash) {
+                return false;
+            }
+            Node node = new Node(hash, key, value, curr);
+            if (pred.next.compareAndSet(curr, node, false, false)) {
+                counter.increment();
+                return true;
+            }
+        }
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        int hash = key.hashCode();
+        Node curr = head;
+        while (curr.hash < hash) {
+            curr = curr.next.getReference();
+        }
+        // a node replaced by compute() is followed by its replacement
+        while (curr.hash == hash && curr.next.isMarked()) {
+            curr = curr.next.getReference();
+        }
+        return curr.hash == hash ? curr.value : null;
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        int hash = key.hashCode();
+        while (true) {
+            Window window = find(hash);
+            Node pred = window.pred, curr = window.curr;
+            if (curr.hash != hash) {
+                return false;
+            }
+            Node succ = curr.next.getReference();
+            // logical removal, only one thread can mark curr
+            if (!curr.next.compareAndSet(succ, succ, false, true)) {
+                continue;
+            }
+            counter.decrement();
+            // physical removal, if this fails the next find() over this node unlinks it
+            pred.next.compareAndSet(curr, succ, false, false);
+            return true;
+        }
+    }
+
+    // Find key once and apply remapping to its value, with a compareAndSet that fails if it changed.
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = key.hashCode();
+        while (true) {
+            Window window = find(hash);
+            Node pred = window.pred, curr = window.curr;
+            if (curr.hash != hash) {
+                V value = remapping.apply(key, null);
+                if (value == null) {
+                    return null;
+                }
+                Node node = new Node(hash, key, value, curr);
+                if (pred.next.compareAndSet(curr, node, false, false)) {
+                    counter.increment();
+                    return value;
+                }
+                continue;
+            }
+            V value = remapping.apply(key, curr.value);
+            if (value == curr.value) {
+                return value;
+            }
+            Node succ = curr.next.getReference();
+            // marking curr removes it, and its replacement (if any) becomes reachable at the same time
+            Node next = value == null ? succ : new Node(hash, curr.key, value, succ);
+            if (!curr.next.compareAndSet(succ, next, false, true)) {
+                continue;
+            }
+            if (value == null) {
+                counter.decrement();
+            }
+            pred.next.compareAndSet(curr, next, false, false);
+            return value;
+        }
+    }
+
+    public int size() {
+        int size = 0;
+
+        Node n = head.next.getReference();
+        while (n.hash != Integer.MAX_VALUE) {
+            if (!n.next.isMarked())
+                size++;
+            n = n.next.getReference();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,271 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The Chain from Q2. Each distinct chain within the hashtable has its own lock. This allows the
+ * data structure to have greater parallelism and less lock contention than locking the whole table.
+ */
+class LockedChain<K, V> implements Bucket<K, V> {
+    private Node head;
+    private final LongAdder counter;
+    private ReentrantLock lock = new ReentrantLock();
+
+    // This iterator is only required for Q6 and
+    // may otherwise be ignored.
+    public class ChainIterator implements java.util.Iterator<KeyValue<K, V>> {
+        private Node cur;
+
+        public ChainIterator() {
+            cur = head;
+        }
+
+        public boolean hasNext() {
+            return cur.next != null
+                    && cur.next.hash != Integer.MAX_VALUE;
+        }
+
+        public KeyValue<K, V> next() {
+            cur = cur.next;
+            return new KeyValue<K, V>(cur.key, cur.value);
+        }
+    }
+
+    public java.util.Iterator<KeyValue<K, V>> iterator() {
+        return new ChainIterator();
+    }
+
+    // The nodes have no volatile fields, so the chain is copied under the lock its writers hold.
+    public java.util.Iterator<KeyValue<K, V>> snapshot() {
+        lock.lock();
+        try {
+            return Bucket.super.snapshot();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class Node {
+        int hash;
+        K key;
+        V value;
+        Node next;
+
+        public Node(int hash) {
+            this.hash = hash;
+            this.key = null;
+            this.value = null;
+            this.next = null;
+        }
+
+        public Node(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = null;
+        }
+    }
+
+    public LockedChain() {
+        this(new LongAdder());
+    }
+
+    public LockedChain(LongAdder counter) {
+        this.counter = counter;
+        Node tail = new Node(Integer.MAX_VALUE);
+        head = new Node(Integer.MIN_VALUE);
+        head.next = tail;
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        Node pred, curr;
+        // Require key != null and value != null
+        // Get hash code
+        int hash = key.hashCode();
+        lock.lock();
+        try {
+            pred = head;
+            curr = pred.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            if (hash == curr.hash) {
+                return false;
+            } else {
+                Node node = new Node(hash, key, value);
+                node.next = curr;
+                pred.next = node;
+                counter.increment();
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        Node pred, curr;
+        int hash = key.hashCode();
+        lock.lock();
+        try {
+            pred = head;
+            curr = pred.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            return (hash == curr.hash) ? curr.value : null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        // Require key != null
+        Node pred, curr;
+        int hash = key.hashCode();
+        lock.lock();
+        try {
+            pred = head;
+            curr = pred.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            if (hash == curr.hash) {
+                pred.next = curr.next;
+                counter.decrement();
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Find key once and apply remapping to its value under the same lock.
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        Node pred, curr;
+        int hash = key.hashCode();
+        lock.lock();
+        try {
+            pred = head;
+            curr = pred.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            if (hash == curr.hash) {
+                V value = remapping.apply(key, curr.value);
+                if (value == null) {
+                    pred.next = curr.next;
+                    counter.decrement();
+                } else if (value != curr.value) {
+                    curr.value = value;
+                }
+                return value;
+            }
+            V value = remapping.apply(key, null);
+            if (value != null) {
+                Node node = new Node(hash, key, value);
+                node.next = curr;
+                pred.next = node;
+                counter.increment();
+            }
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Insert the sorted entries, holding the lock once for the whole walk.
+    public int addAll(List<KeyValue<K, V>> sorted) {
+        int added = 0;
+        lock.lock();
+        try {
+            Node pred = head;
+            Node curr = pred.next;
+            for (KeyValue<K, V> kv : sorted) {
+                int hash = kv.key.hashCode();
+                while (curr.hash < hash) {
+                    pred = curr;
+                    curr = curr.next;
+                }
+                if (hash != curr.hash) {
+                    Node node = new Node(hash, kv.key, kv.value);
+                    node.next = curr;
+                    pred.next = node;
+                    counter.increment();
+                    added++;
+                    // so that a duplicate later in the batch finds it
+                    curr = node;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return added;
+    }
+
+    // Lookup the sorted keys in one walk.
+    public List<V> getAll(List<K> sorted) {
+        List<V> values = new ArrayList<V>(sorted.size());
+        lock.lock();
+        try {
+            Node curr = head.next;
+            for (K key : sorted) {
+                int hash = key.hashCode();
+                while (curr.hash < hash) {
+                    curr = curr.next;
+                }
+                values.add((hash == curr.hash) ? curr.value : null);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return values;
+    }
+
+    // Remove the sorted keys in one walk.
+    public int removeAll(List<K> sorted) {
+        int removed = 0;
+        lock.lock();
+        try {
+            Node pred = head;
+            Node curr = pred.next;
+            for (K key : sorted) {
+                int hash = key.hashCode();
+                while (curr.hash < hash) {
+                    pred = curr;
+                    curr = curr.next;
+                }
+                if (hash == curr.hash) {
+                    pred.next = curr.next;
+                    curr = curr.next;
+                    counter.decrement();
+                    removed++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+        Node n = head.next;
+        while (n.next != null) {
+            size++;
+            n = n.next;
+        }
+        return size;
+    }
+}
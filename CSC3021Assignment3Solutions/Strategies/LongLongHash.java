@@ -0,0 +1,147 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The Q5 Hash specialized for long keys and long values, built on LongLongChain. Keys and values are never
+ * boxed, no hashCode() or equals() is called, and the bucket of a key is the same one Long.hashCode()
+ * would give. As in Q5, add() and remove() hold the read lock of the table while resize() holds the write
+ * lock, and get() reads the volatile bucket array without locking (RCU style).
+ * There is no null to return for a missing key, so lookups are getOrDefault() and contains().
+ */
+public class LongLongHash {
+    private final ResizePolicy policy;
+    private volatile LongLongChain[] buckets;
+    /**
+     * Shared by every chain in buckets. resize() builds the new chains with a new counter.
+     */
+    private volatile LongAdder count;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    public LongLongHash(int num_buckets_) {
+        this(num_buckets_, ResizePolicy.DEFAULT);
+    }
+
+    public LongLongHash(int num_buckets_, ResizePolicy policy) {
+        this.policy = policy;
+        count = new LongAdder();
+        buckets = newBucketArray(num_buckets_, count);
+    }
+
+    private static LongLongChain[] newBucketArray(int n, LongAdder counter) {
+        LongLongChain[] array = new LongLongChain[n];
+        for (int i = 0; i < n; ++i)
+            array[i] = new LongLongChain(counter);
+        return array;
+    }
+
+    private static int bHash(long key, int num_buckets) {
+        return Math.abs(Long.hashCode(key) % num_buckets);
+    }
+
+    public int getArraySize() {
+        return buckets.length;
+    }
+
+    /**
+     * Rehashes every entry into a new bucket array while holding the write lock, then publishes it.
+     * @param new_num_buckets - the new size of the array
+     */
+    public void resize(int new_num_buckets) {
+        lock.writeLock().lock();
+        try {
+            rehash(new_num_buckets);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Called with the write lock held.
+    private void rehash(int new_num_buckets) {
+        if (new_num_buckets == buckets.length)
+            return;
+        LongAdder new_count = new LongAdder();
+        LongLongChain[] new_buckets = newBucketArray(new_num_buckets, new_count);
+        for (LongLongChain chain : buckets)
+            chain.forEach((key, value) -> new_buckets[bHash(key, new_num_buckets)].add(key, value));
+        count = new_count;
+        buckets = new_buckets;
+    }
+
+    /**
+     * Resizes the table if the policy asks for it, after the caller has released the read lock.
+     */
+    private void checkLoad() {
+        int num_buckets = buckets.length;
+        if (policy.targetBuckets(count.sum(), num_buckets) != num_buckets) {
+            lock.writeLock().lock();
+            try {
+                // another thread may have resized while we were waiting for the lock
+                rehash(policy.targetBuckets(count.sum(), buckets.length));
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Insert value for key.
+    public boolean add(long key, long value) {
+        boolean added;
+        lock.readLock().lock();
+        try {
+            LongLongChain[] b = buckets;
+            added = b[bHash(key, b.length)].add(key, value);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (added)
+            checkLoad();
+        return added;
+    }
+
+    /**
+     * Notice a reading thread will not be required to wait, it reads whichever bucket array was
+     * published last.
+     */
+    public long getOrDefault(long key, long defaultValue) {
+        LongLongChain[] b = buckets;
+        return b[bHash(key, b.length)].getOrDefault(key, defaultValue);
+    }
+
+    public boolean contains(long key) {
+        LongLongChain[] b = buckets;
+        return b[bHash(key, b.length)].contains(key);
+    }
+
+    // Remove key/value pair
+    public boolean remove(long key) {
+        boolean removed;
+        lock.readLock().lock();
+        try {
+            LongLongChain[] b = buckets;
+            removed = b[bHash(key, b.length)].remove(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (removed)
+            checkLoad();
+        return removed;
+    }
+
+    public int size() {
+        return (int) count.sum();
+    }
+
+    /**
+     * Calls action for every entry, one bucket after another. Entries added or removed while it runs
+     * may or may not be seen.
+     */
+    public void forEach(EntryConsumer action) {
+        for (LongLongChain chain : buckets)
+            chain.forEach(action);
+    }
+}
@@ -0,0 +1,76 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The lock of a chain node, kept in the node itself as a single int instead of a ReentrantLock of its
+ * own. A ReentrantLock and its AbstractQueuedSynchronizer are two more objects per node (sentinels
+ * included) that have to be allocated and collected with it; here a node pays four bytes.
+ * The chains that lock nodes extend their Node from this class and keep the same locking protocols.
+ * The lock is not reentrant and does not check that unlock() comes from the holder, which none of
+ * those protocols need. A thread that finds it held spins for a while, since node locks are held
+ * for a few steps of a traversal, then yields its processor a few times, so that a holder that was
+ * descheduled gets to run. After that it parks between attempts, for twice as long each time up to
+ * MAX_PARK_NANOS, so a thread stuck behind a long wait stops burning a processor. There is no queue of
+ * waiting threads for unlock() to wake, so every park is timed and the waiter tries again when it ends.
+ * The lock is not fair.
+ */
+class NodeLock {
+    private static final VarHandle STATE;
+    private static final int UNLOCKED = 0;
+    private static final int LOCKED = 1;
+    /**
+     * Number of times a thread spins on a held lock before it starts to yield.
+     */
+    private static final int SPINS = 100;
+    /**
+     * Number of times it then yields before it starts to park.
+     */
+    private static final int YIELDS = 10;
+    private static final long MIN_PARK_NANOS = 1_000;
+    /**
+     * Longest park, and so the longest a waiter can sleep on after the lock has been released. Kept
+     * short: a waiter only gets this far once the holder has been held up for a while already.
+     */
+    private static final long MAX_PARK_NANOS = 100_000;
+
+    static {
+        try {
+            STATE = MethodHandles.lookup().findVarHandle(NodeLock.class, "state", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile int state;
+
+    public final void lock() {
+        if (!STATE.compareAndSet(this, UNLOCKED, LOCKED))
+            lockSlowly();
+    }
+
+    private void lockSlowly() {
+        long park = MIN_PARK_NANOS;
+        for (int spins = 0; ; ++spins) {
+            // read before trying the compareAndSet, so waiters do not keep taking the cache line from the holder
+            if (state == UNLOCKED && STATE.compareAndSet(this, UNLOCKED, LOCKED))
+                return;
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else if (spins < SPINS + YIELDS) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(this, park);
+                park = Math.min(2 * park, MAX_PARK_NANOS);
+            }
+        }
+    }
+
+    public final boolean tryLock() {
+        return state == UNLOCKED && STATE.compareAndSet(this, UNLOCKED, LOCKED);
+    }
+
+    public final void unlock() {
+        STATE.setRelease(this, UNLOCKED);
+    }
+}
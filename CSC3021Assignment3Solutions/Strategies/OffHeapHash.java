@@ -0,0 +1,388 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+/**
+ * A Hash whose chains live off the Java heap. Every entry is a fixed-layout record in a direct
+ * ByteBuffer: the hash code, the index of the next record in the chain, then the key and the value as
+ * written by their Serializer. Chains link records by index rather than by reference, so however many
+ * entries the table holds the collector only sees a handful of buffers.
+ * The table is split into NUM_SEGMENTS segments by hash code, and every segment owns its own buckets,
+ * record buffers and free list, guarded by its own read/write lock: get() holds the read lock,
+ * add() and remove() the write lock. A segment resizes by relinking its records into a new bucket array
+ * without moving them, and the other segments carry on meanwhile.
+ * Keys are compared with equals() after they have been read back, so they do not have to serialize
+ * to the same bytes. Buffers are never returned to the system before the table itself is collected;
+ * the records of removed entries are reused.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the chain.
+ * @param <V> This is the value. It will be associated with a key in the chain.
+ */
+public class OffHeapHash<K, V> implements ConcurrentHash<K, V> {
+    private static final int SEGMENT_BITS = 4;
+    private static final int NUM_SEGMENTS = 1 << SEGMENT_BITS;
+    /**
+     * Records are allocated in buffers of 2^CHUNK_BITS records.
+     */
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int NIL = -1;
+
+    private static final int HASH_OFFSET = 0;
+    private static final int NEXT_OFFSET = 4;
+    private static final int KEY_OFFSET = 8;
+
+    private final Serializer<K> keySerializer;
+    private final Serializer<V> valueSerializer;
+    private final int valueOffset;
+    private final int recordSize;
+    /**
+     * Replaced by ResizePolicy.FIXED once resize() has been called, so the policy does not undo it.
+     */
+    private volatile ResizePolicy policy;
+    private final Segment[] segments;
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Every field but num_buckets is only used while holding lock.
+     */
+    private final class Segment {
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        volatile int num_buckets;
+        ByteBuffer heads;
+        ByteBuffer[] chunks = new ByteBuffer[1];
+        int used;
+        int free = NIL;
+        int size;
+
+        Segment(int num_buckets) {
+            this.num_buckets = num_buckets;
+            heads = newHeads(num_buckets);
+        }
+
+        int bucket(int hash) {
+            return (hash >>> SEGMENT_BITS) % num_buckets;
+        }
+
+        ByteBuffer chunk(int record) {
+            return chunks[record >>> CHUNK_BITS];
+        }
+
+        int offset(int record) {
+            return (record & CHUNK_MASK) * recordSize;
+        }
+
+        int head(int bucket) {
+            return heads.getInt(bucket * Integer.BYTES);
+        }
+
+        void setHead(int bucket, int record) {
+            heads.putInt(bucket * Integer.BYTES, record);
+        }
+
+        int next(int record) {
+            return chunk(record).getInt(offset(record) + NEXT_OFFSET);
+        }
+
+        void setNext(int record, int next) {
+            chunk(record).putInt(offset(record) + NEXT_OFFSET, next);
+        }
+
+        int hash(int record) {
+            return chunk(record).getInt(offset(record) + HASH_OFFSET);
+        }
+
+        K key(int record) {
+            return keySerializer.read(chunk(record), offset(record) + KEY_OFFSET);
+        }
+
+        V value(int record) {
+            return valueSerializer.read(chunk(record), offset(record) + valueOffset);
+        }
+
+        // Returns the record that holds key, or NIL.
+        int find(int bucket, int hash, K key) {
+            for (int r = head(bucket); r != NIL; r = next(r))
+                if (hash(r) == hash && key.equals(key(r)))
+                    return r;
+            return NIL;
+        }
+
+        // Takes a record from the free list, or the next unused one.
+        int allocate() {
+            if (free != NIL) {
+                int r = free;
+                free = next(r);
+                return r;
+            }
+            int r = used++;
+            int c = r >>> CHUNK_BITS;
+            if (c == chunks.length)
+                chunks = Arrays.copyOf(chunks, c * 2);
+            if (chunks[c] == null)
+                chunks[c] = ByteBuffer.allocateDirect(recordSize << CHUNK_BITS).order(ByteOrder.nativeOrder());
+            return r;
+        }
+
+        void release(int record) {
+            setNext(record, free);
+            free = record;
+        }
+
+        // Moves every record into a new bucket array, the records themselves stay where they are.
+        void relink(int new_num_buckets) {
+            if (new_num_buckets == num_buckets)
+                return;
+            ByteBuffer old_heads = heads;
+            int old_num_buckets = num_buckets;
+            heads = newHeads(new_num_buckets);
+            num_buckets = new_num_buckets;
+            for (int i = 0; i < old_num_buckets; ++i) {
+                int r = old_heads.getInt(i * Integer.BYTES);
+                while (r != NIL) {
+                    int next = next(r);
+                    int bucket = bucket(hash(r));
+                    setNext(r, head(bucket));
+                    setHead(bucket, r);
+                    r = next;
+                }
+            }
+        }
+
+        // Called with the write lock held.
+        void checkLoad() {
+            relink(policy.targetBuckets(size, num_buckets));
+        }
+
+        List<KeyValue<K, V>> entries() {
+            List<KeyValue<K, V>> entries = new ArrayList<KeyValue<K, V>>();
+            lock.readLock().lock();
+            try {
+                for (int i = 0; i < num_buckets; ++i)
+                    for (int r = head(i); r != NIL; r = next(r))
+                        entries.add(new KeyValue<K, V>(key(r), value(r)));
+            } finally {
+                lock.readLock().unlock();
+            }
+            return entries;
+        }
+    }
+
+    public OffHeapHash(int num_buckets_, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        this(num_buckets_, keySerializer, valueSerializer, ResizePolicy.DEFAULT);
+    }
+
+    /**
+     * The policy is applied to each segment on its own, until resize() is called.
+     */
+    public OffHeapHash(int num_buckets_, Serializer<K> keySerializer, Serializer<V> valueSerializer,
+                       ResizePolicy policy) {
+        this.keySerializer = keySerializer;
+        this.valueSerializer = valueSerializer;
+        this.policy = policy;
+        valueOffset = KEY_OFFSET + keySerializer.byteSize();
+        // round up to 8 bytes so that records stay aligned
+        recordSize = (valueOffset + valueSerializer.byteSize() + 7) & ~7;
+        segments = newSegmentArray(NUM_SEGMENTS);
+        for (int i = 0; i < NUM_SEGMENTS; ++i)
+            segments[i] = new Segment(segmentBuckets(num_buckets_));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Segment[] newSegmentArray(int n) {
+        return (Segment[]) new OffHeapHash<?, ?>.Segment[n];
+    }
+
+    private static int segmentBuckets(int num_buckets) {
+        return Math.max(1, (num_buckets + NUM_SEGMENTS - 1) / NUM_SEGMENTS);
+    }
+
+    private static ByteBuffer newHeads(int num_buckets) {
+        ByteBuffer heads = ByteBuffer.allocateDirect(num_buckets * Integer.BYTES).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < num_buckets; ++i)
+            heads.putInt(i * Integer.BYTES, NIL);
+        return heads;
+    }
+
+    private static int spread(int h) {
+        return (h ^ (h >>> 16)) & 0x7FFFFFFF;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash & (NUM_SEGMENTS - 1)];
+    }
+
+    public int getArraySize() {
+        int size = 0;
+        for (Segment s : segments)
+            size += s.num_buckets;
+        return size;
+    }
+
+    /**
+     * Relinks one segment at a time, so only the operations on the segment being relinked wait.
+     * The caller has chosen the size from then on: the ResizePolicy is no longer applied, otherwise the
+     * next add() or remove() would take the segments straight back to the size the policy prefers.
+     * @param new_num_buckets - the new size of the array, shared out evenly between the segments
+     */
+    public void resize(int new_num_buckets) {
+        policy = ResizePolicy.FIXED;
+        int n = segmentBuckets(new_num_buckets);
+        for (Segment s : segments) {
+            s.lock.writeLock().lock();
+            try {
+                s.relink(n);
+            } finally {
+                s.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        int hash = spread(key.hashCode());
+        Segment s = segmentFor(hash);
+        s.lock.writeLock().lock();
+        try {
+            int bucket = s.bucket(hash);
+            if (s.find(bucket, hash, key) != NIL)
+                return false;
+            int r = s.allocate();
+            ByteBuffer chunk = s.chunk(r);
+            int offset = s.offset(r);
+            chunk.putInt(offset + HASH_OFFSET, hash);
+            keySerializer.write(chunk, offset + KEY_OFFSET, key);
+            valueSerializer.write(chunk, offset + valueOffset, value);
+            chunk.putInt(offset + NEXT_OFFSET, s.head(bucket));
+            s.setHead(bucket, r);
+            s.size++;
+            count.increment();
+            s.checkLoad();
+            return true;
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        int hash = spread(key.hashCode());
+        Segment s = segmentFor(hash);
+        s.lock.readLock().lock();
+        try {
+            int r = s.find(s.bucket(hash), hash, key);
+            return r == NIL ? null : s.value(r);
+        } finally {
+            s.lock.readLock().unlock();
+        }
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        int hash = spread(key.hashCode());
+        Segment s = segmentFor(hash);
+        s.lock.writeLock().lock();
+        try {
+            int bucket = s.bucket(hash);
+            int pred = NIL;
+            for (int r = s.head(bucket); r != NIL; pred = r, r = s.next(r)) {
+                if (s.hash(r) == hash && key.equals(s.key(r))) {
+                    if (pred == NIL)
+                        s.setHead(bucket, s.next(r));
+                    else
+                        s.setNext(pred, s.next(r));
+                    s.release(r);
+                    s.size--;
+                    count.decrement();
+                    s.checkLoad();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Holds the segment's write lock while it applies remapping. A new value is written over the old
+     * one in the same record.
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = spread(key.hashCode());
+        Segment s = segmentFor(hash);
+        s.lock.writeLock().lock();
+        try {
+            int bucket = s.bucket(hash);
+            int pred = NIL;
+            for (int r = s.head(bucket); r != NIL; pred = r, r = s.next(r)) {
+                if (s.hash(r) == hash && key.equals(s.key(r))) {
+                    V value = remapping.apply(key, s.value(r));
+                    if (value != null) {
+                        valueSerializer.write(s.chunk(r), s.offset(r) + valueOffset, value);
+                        return value;
+                    }
+                    if (pred == NIL)
+                        s.setHead(bucket, s.next(r));
+                    else
+                        s.setNext(pred, s.next(r));
+                    s.release(r);
+                    s.size--;
+                    count.decrement();
+                    s.checkLoad();
+                    return null;
+                }
+            }
+            V value = remapping.apply(key, null);
+            if (value == null)
+                return null;
+            int r = s.allocate();
+            ByteBuffer chunk = s.chunk(r);
+            int offset = s.offset(r);
+            chunk.putInt(offset + HASH_OFFSET, hash);
+            keySerializer.write(chunk, offset + KEY_OFFSET, key);
+            valueSerializer.write(chunk, offset + valueOffset, value);
+            chunk.putInt(offset + NEXT_OFFSET, s.head(bucket));
+            s.setHead(bucket, r);
+            s.size++;
+            count.increment();
+            s.checkLoad();
+            return value;
+        } finally {
+            s.lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        return (int) count.sum();
+    }
+
+    /**
+     * Copies the entries of one segment at a time, under that segment's read lock.
+     */
+    public Iterator<KeyValue<K, V>> iterator() {
+        return new Iterator<KeyValue<K, V>>() {
+            private int segment = 0;
+            private Iterator<KeyValue<K, V>> current = Collections.<KeyValue<K, V>>emptyIterator();
+
+            public boolean hasNext() {
+                while (!current.hasNext() && segment < segments.length)
+                    current = segments[segment++].entries().iterator();
+                return current.hasNext();
+            }
+
+            public KeyValue<K, V> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return current.next();
+            }
+        };
+    }
+}
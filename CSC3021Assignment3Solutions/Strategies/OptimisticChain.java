@@ -0,0 +1,213 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * The Chain from Q5b, using optimistic synchronization. Threads traverse the chain without locking,
+ * then lock the two nodes they need and validate that they are still reachable and adjacent.
+ */
+class OptimisticChain<K, V> implements Bucket<K, V> {
+    private Node head;
+    private final LongAdder counter;
+
+    // This iterator is only required for Q6 and
+    // may otherwise be ignored.
+    public class ChainIterator implements java.util.Iterator<KeyValue<K, V>> {
+        // Read one node ahead, so that a remove() between hasNext() and next() cannot leave next()
+        // returning the tail sentinel.
+        private Node next;
+
+        public ChainIterator() {
+            next = head.next;
+        }
+
+        public boolean hasNext() {
+            return next != null
+                    && next.hash != Integer.MAX_VALUE;
+        }
+
+        public KeyValue<K, V> next() {
+            Node cur = next;
+            next = cur.next;
+            return new KeyValue<K, V>(cur.key, cur.value);
+        }
+    }
+
+    public java.util.Iterator<KeyValue<K, V>> iterator() {
+        return new ChainIterator();
+    }
+
+    private class Node extends NodeLock {
+        int hash;
+        boolean marked;
+        K key;
+        V value;
+        Node next;
+
+        public Node(int hash) {
+            this.hash = hash;
+            this.marked = false;
+            this.key = null;
+            this.value = null;
+            this.next = null;
+        }
+
+        public Node(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = null;
+        }
+    }
+
+    public OptimisticChain() {
+        this(new LongAdder());
+    }
+
+    public OptimisticChain(LongAdder counter) {
+        this.counter = counter;
+        /*
+            Setting head to MAX and tail to MIN Integers because this will let us know if we are
+            at the end of the chain. We may need to add something or remove a node.
+         */
+        Node tail = new Node(Integer.MAX_VALUE);
+        head = new Node(Integer.MIN_VALUE);
+        head.next = tail;
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            pred.lock();
+            curr.lock();
+            try {
+                if (validate(pred, curr)) {
+                    if (curr.hash == hash) {
+                        return false;
+                    } else {
+                        Node node = new Node(hash, key, value);
+                        node.next = curr;
+                        pred.next = node;
+                        counter.increment();
+                        return true;
+                    }
+                }
+            } finally {
+                pred.unlock(); curr.unlock();
+            }
+        }
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        int hash = key.hashCode();
+        while(true) {
+            Node pred = this.head;
+            Node curr = pred.next;
+            while (curr.hash < hash) {
+                pred = curr; curr = curr.next;
+            }
+            pred.lock(); curr.lock();
+            try {
+                if (validate(pred, curr)) {
+                    return curr.hash == hash ? curr.value : null;
+                }
+            } finally {
+                pred.unlock(); curr.unlock();
+            }
+        }
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            pred.lock(); curr.lock();
+            try {
+                if (validate(pred, curr)) {
+                    if (curr.hash == hash) {
+                        pred.next = curr.next;
+                        counter.decrement();
+                        return true;
+                    } else {
+                        return false;
+                    }
+                }
+            } finally {
+                pred.unlock(); curr.unlock();
+            }
+        }
+    }
+
+    // Find key once and apply remapping to its value once pred and curr are locked and validated.
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            pred.lock(); curr.lock();
+            try {
+                if (validate(pred, curr)) {
+                    if (curr.hash == hash) {
+                        V value = remapping.apply(key, curr.value);
+                        if (value != null) {
+                            curr.value = value;
+                        } else {
+                            pred.next = curr.next;
+                            counter.decrement();
+                        }
+                        return value;
+                    }
+                    V value = remapping.apply(key, null);
+                    if (value != null) {
+                        Node node = new Node(hash, key, value);
+                        node.next = curr;
+                        pred.next = node;
+                        counter.increment();
+                    }
+                    return value;
+                }
+            } finally {
+                pred.unlock(); curr.unlock();
+            }
+        }
+    }
+
+    private boolean validate(Node pred, Node curr) {
+        Node node = head;
+        while (node.hash <= pred.hash) {
+            if (node == pred) {
+                return pred.next == curr;
+            }
+            node = node.next;
+        }
+        return false;
+    }
+
+    public int size() {
+        int size = 0;
+
+        Node n = head.next;
+        while (n.next != null) {
+            size++;
+            n = n.next;
+        }
+        return size;
+    }
+}
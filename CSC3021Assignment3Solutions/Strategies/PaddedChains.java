@@ -0,0 +1,95 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The chains that do their own locking, each followed in memory by two cache lines of padding. A table
+ * creates its chains one after the other, so without padding a chain, its lock and its sentinel nodes
+ * usually share cache lines with those of the neighbouring buckets, and threads writing to different
+ * buckets keep invalidating each other's lines (false sharing).
+ * Padding fields in the chain object itself would not help: the chain is allocated before the
+ * constructor of its superclass allocates the lock and the sentinels, so they would all still sit
+ * between this chain's padding and the next chain. The padding is an array allocated by a field
+ * initializer instead, which runs after the superclass constructor, so it lands after everything the
+ * chain allocated and before the next chain. Two lines rather than one because many processors fetch
+ * cache lines in adjacent pairs. The layout follows allocation order, so a copying collector that
+ * moves the objects may still bring neighbouring chains closer together.
+ * HashFactory uses these for the strategies that support a padded layout.
+ */
+final class PaddedChains {
+    // Two cache lines of 64 bytes.
+    private static final int PAD_LONGS = 16;
+
+    private PaddedChains() {
+    }
+
+    static final class Locked<K, V> extends LockedChain<K, V> {
+        final long[] pad = new long[PAD_LONGS];
+
+        Locked(LongAdder counter) {
+            super(counter);
+        }
+    }
+
+    static final class ReadWrite<K, V> extends ReadWriteChain<K, V> {
+        final long[] pad = new long[PAD_LONGS];
+
+        ReadWrite(LongAdder counter) {
+            super(counter);
+        }
+    }
+
+    static final class Stamped<K, V> extends StampedChain<K, V> {
+        final long[] pad = new long[PAD_LONGS];
+
+        Stamped(LongAdder counter) {
+            super(counter);
+        }
+    }
+
+    static final class HandOverHand<K, V> extends HandOverHandChain<K, V> {
+        final long[] pad = new long[PAD_LONGS];
+
+        HandOverHand(LongAdder counter, boolean waitFreeGet) {
+            super(counter, waitFreeGet);
+        }
+    }
+
+    static final class Optimistic<K, V> extends OptimisticChain<K, V> {
+        final long[] pad = new long[PAD_LONGS];
+
+        Optimistic(LongAdder counter) {
+            super(counter);
+        }
+    }
+
+    static final class VersionedOptimistic<K, V> extends VersionedOptimisticChain<K, V> {
+        final long[] pad = new long[PAD_LONGS];
+
+        VersionedOptimistic(LongAdder counter) {
+            super(counter);
+        }
+    }
+
+    static final class Lazy<K, V> extends LazyChain<K, V> {
+        final long[] pad = new long[PAD_LONGS];
+
+        Lazy(LongAdder counter) {
+            super(counter);
+        }
+    }
+
+    static final class LockFree<K, V> extends LockFreeChain<K, V> {
+        final long[] pad = new long[PAD_LONGS];
+
+        LockFree(LongAdder counter) {
+            super(counter);
+        }
+    }
+
+    static final class Treeifying<K, V> extends TreeifyingChain<K, V> {
+        final long[] pad = new long[PAD_LONGS];
+
+        Treeifying(LongAdder counter) {
+            super(counter);
+        }
+    }
+}
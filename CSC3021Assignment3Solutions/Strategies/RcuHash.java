@@ -0,0 +1,516 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+/**
+ * The Hash from Q5, shared by Q5, Q5b and Q5c, with an incremental resize.
+ * A resize no longer rebuilds the whole table under one lock. It publishes the new table as the
+ * next table of the current one and then migrates the buckets a range at a time, replacing every
+ * migrated bucket with a forwarding marker. add() and remove() only lock the stripe of the bucket
+ * they use (shared with other writers, exclusive to the migration of that bucket), and a writer that
+ * lands on a forwarded bucket helps with the migration before retrying in the next table. get() does
+ * not lock at all and follows forwarding markers to wherever the bucket now lives.
+ * Once every bucket has been migrated the next table is published as the current table (RCU style).
+ * The table also resizes itself when the ResizePolicy says the average chain length is too long or
+ * too short. The writer that notices starts the migration and copies one range of buckets; every
+ * later add(), remove() and compute() copies one more range until the migration is done, so no
+ * single call pays for the whole table. The buckets of a table are created on first use, so starting
+ * a migration does not allocate the whole next table either.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the chain.
+ * @param <V> This is the value. It will be associated with a key in the chain.
+ */
+public class RcuHash<K, V> implements ConcurrentHash<K, V> {
+    /**
+     * Number of buckets a thread claims at a time when it takes part in a migration.
+     */
+    private static final int TRANSFER_STRIDE = 16;
+    private static final int MAX_LOCK_STRIPES = 64;
+
+    private final Function<LongAdder, Bucket<K, V>> newBucket;
+    private final ResizePolicy policy;
+    private volatile Table<K, V> table;
+    /**
+     * Shared by the chains of every table, so it keeps counting across a resize.
+     */
+    private final LongAdder count = new LongAdder();
+    /**
+     * Only one resize can be in progress at a time.
+     */
+    private final ReentrantLock resizeLock = new ReentrantLock();
+
+    private static final class Table<K, V> {
+        // null until the bucket is first used, see bucket()
+        final AtomicReferenceArray<Bucket<K, V>> buckets;
+        final int length;
+        private final Function<LongAdder, Bucket<K, V>> newBucket;
+        private final LongAdder count;
+        /**
+         * Writers hold the read lock of a bucket's stripe while they use it, the migration holds
+         * the write lock while it copies the bucket, so nothing is added to a bucket once it is copied.
+         */
+        final ReentrantReadWriteLock[] locks;
+        final Forwarding<K, V> forwarding;
+        final AtomicInteger transferIndex = new AtomicInteger(0);
+        final AtomicInteger migrated = new AtomicInteger(0);
+
+        Table(int length, Function<LongAdder, Bucket<K, V>> newBucket, LongAdder count) {
+            this.length = length;
+            this.newBucket = newBucket;
+            this.count = count;
+            buckets = new AtomicReferenceArray<Bucket<K, V>>(length);
+            locks = new ReentrantReadWriteLock[Math.min(length, MAX_LOCK_STRIPES)];
+            for (int i = 0; i < locks.length; ++i)
+                locks[i] = new ReentrantReadWriteLock();
+            forwarding = new Forwarding<K, V>();
+        }
+
+        // The bucket at i (or the forwarding marker), creating it if it has not been used yet.
+        Bucket<K, V> bucket(int i) {
+            Bucket<K, V> b = buckets.get(i);
+            if (b == null) {
+                Bucket<K, V> created = newBucket.apply(count);
+                b = buckets.compareAndSet(i, null, created) ? created : buckets.get(i);
+            }
+            return b;
+        }
+
+        int bHash(int hash) {
+            return Math.abs(hash % length);
+        }
+
+        ReentrantReadWriteLock lockFor(int bhash) {
+            return locks[bhash % locks.length];
+        }
+    }
+
+    /**
+     * Marker left in a bucket of the old table once it has been migrated to nextTable.
+     */
+    private static final class Forwarding<K, V> implements Bucket<K, V> {
+        volatile Table<K, V> nextTable;
+
+        public boolean add(K key, V value) {
+            throw new IllegalStateException("bucket has been migrated");
+        }
+
+        public V get(K key) {
+            throw new IllegalStateException("bucket has been migrated");
+        }
+
+        public boolean remove(K key) {
+            throw new IllegalStateException("bucket has been migrated");
+        }
+
+        public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+            throw new IllegalStateException("bucket has been migrated");
+        }
+
+        public int size() {
+            return 0;
+        }
+
+        public Iterator<KeyValue<K, V>> iterator() {
+            return java.util.Collections.<KeyValue<K, V>>emptyIterator();
+        }
+    }
+
+    public RcuHash(int num_buckets_, Function<LongAdder, Bucket<K, V>> newBucket) {
+        this(num_buckets_, newBucket, ResizePolicy.DEFAULT);
+    }
+
+    public RcuHash(int num_buckets_, Function<LongAdder, Bucket<K, V>> newBucket, ResizePolicy policy) {
+        this.newBucket = newBucket;
+        this.policy = policy;
+        table = new Table<K, V>(num_buckets_, newBucket, count);
+    }
+
+    public int getArraySize() {
+        return table.length;
+    }
+
+    /**
+     * Starts a migration to a table of new_num_buckets buckets and works on it until every bucket has been
+     * migrated, after finishing any migration the policy had started. Writers that run into a migrated
+     * bucket claim ranges of buckets too, so the work is shared, and no add(), remove() or get() waits
+     * for more than the copy of a single bucket. Only the caller of resize() pays for the whole table.
+     * @param new_num_buckets - the new size of the array (determined by driver)
+     */
+    public void resize(int new_num_buckets) {
+        resizeLock.lock();
+        try {
+            finishMigration(table);
+            Table<K, V> current = table;
+            current.forwarding.nextTable = new Table<K, V>(new_num_buckets, newBucket, count);
+            finishMigration(current);
+        } finally {
+            resizeLock.unlock();
+        }
+    }
+
+    // Migrates what is left of the migration of t, if it has one, and waits for the next table to be published.
+    private void finishMigration(Table<K, V> t) {
+        if (t.forwarding.nextTable == null)
+            return;
+        while (transferRange(t)) {
+            // keep claiming ranges until there are none left
+        }
+        // other threads may still be copying the last ranges they claimed
+        while (table == t) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Claims the next range of buckets of t that has not been migrated yet and migrates it.
+     * Returns false if there was nothing left to claim.
+     */
+    private boolean transferRange(Table<K, V> t) {
+        int start = t.transferIndex.getAndAdd(TRANSFER_STRIDE);
+        if (start >= t.length)
+            return false;
+        int end = Math.min(start + TRANSFER_STRIDE, t.length);
+        for (int i = start; i < end; ++i)
+            transferBucket(t, i);
+        // whoever migrates the last bucket publishes the new table
+        if (t.migrated.addAndGet(end - start) == t.length)
+            table = t.forwarding.nextTable;
+        return true;
+    }
+
+    private void transferBucket(Table<K, V> t, int i) {
+        Table<K, V> next = t.forwarding.nextTable;
+        ReentrantReadWriteLock lock = t.lockFor(i);
+        lock.writeLock().lock();
+        try {
+            Bucket<K, V> bucket = t.buckets.get(i);
+            int moved = 0;
+            // a bucket that was never used has nothing to copy
+            if (bucket != null) {
+                Iterator<KeyValue<K, V>> iter = bucket.iterator();
+                while (iter.hasNext()) {
+                    KeyValue<K, V> kv = iter.next();
+                    next.bucket(next.bHash(kv.key.hashCode())).add(kv.key, kv.value);
+                    moved++;
+                }
+            }
+            t.buckets.set(i, t.forwarding);
+            // the copies were counted when they were added to the next table, the old nodes are now gone
+            count.add(-moved);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copies one range of buckets if a migration is in progress, otherwise starts one if the policy asks
+     * for it and copies its first range. The rest is left to the writers that come after, so no writer
+     * copies more than TRANSFER_STRIDE buckets here. This is only called after the caller has released
+     * its stripe lock, because the migration needs the write lock of the stripes it copies. If another
+     * thread is already starting a migration, this thread leaves it to that one.
+     */
+    private void checkLoad() {
+        Table<K, V> t = table;
+        if (t.forwarding.nextTable != null) {
+            transferRange(t);
+            return;
+        }
+        int target = policy.targetBuckets(count.sum(), t.length);
+        if (target != t.length && resizeLock.tryLock()) {
+            try {
+                if (table == t && t.forwarding.nextTable == null) {
+                    t.forwarding.nextTable = new Table<K, V>(target, newBucket, count);
+                    transferRange(t);
+                }
+            } finally {
+                resizeLock.unlock();
+            }
+        }
+    }
+
+    public boolean add(K key, V value) {
+        int hash = key.hashCode();
+        Table<K, V> t = table;
+        boolean added;
+        while (true) {
+            int bhash = t.bHash(hash);
+            ReentrantReadWriteLock lock = t.lockFor(bhash);
+            lock.readLock().lock();
+            try {
+                Bucket<K, V> bucket = t.bucket(bhash);
+                if (bucket != t.forwarding) {
+                    added = bucket.add(key, value);
+                    break;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            // the bucket has been migrated: help with the migration, then retry in the next table
+            transferRange(t);
+            t = t.forwarding.nextTable;
+        }
+        if (added)
+            checkLoad();
+        return added;
+    }
+
+    /**
+     * Notice a reading thread will not be required to wait, and can continue its operations regardless of
+     * concurrent threads updates. A bucket is only replaced by a forwarding marker after all its entries
+     * are in the next table, so following the marker never misses an entry.
+     */
+    public V get(K key) {
+        int hash = key.hashCode();
+        Table<K, V> t = table;
+        Bucket<K, V> bucket = t.buckets.get(t.bHash(hash));
+        while (bucket == t.forwarding) {
+            t = t.forwarding.nextTable;
+            bucket = t.buckets.get(t.bHash(hash));
+        }
+        // a bucket that was never used is empty
+        return bucket == null ? null : bucket.get(key);
+    }
+
+    public boolean remove(K key) {
+        int hash = key.hashCode();
+        Table<K, V> t = table;
+        boolean removed;
+        while (true) {
+            int bhash = t.bHash(hash);
+            ReentrantReadWriteLock lock = t.lockFor(bhash);
+            lock.readLock().lock();
+            try {
+                Bucket<K, V> bucket = t.bucket(bhash);
+                if (bucket != t.forwarding) {
+                    removed = bucket.remove(key);
+                    break;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            transferRange(t);
+            t = t.forwarding.nextTable;
+        }
+        if (removed)
+            checkLoad();
+        return removed;
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = key.hashCode();
+        Table<K, V> t = table;
+        V value;
+        while (true) {
+            int bhash = t.bHash(hash);
+            ReentrantReadWriteLock lock = t.lockFor(bhash);
+            lock.readLock().lock();
+            try {
+                Bucket<K, V> bucket = t.bucket(bhash);
+                if (bucket != t.forwarding) {
+                    value = bucket.compute(key, remapping);
+                    break;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            transferRange(t);
+            t = t.forwarding.nextTable;
+        }
+        checkLoad();
+        return value;
+    }
+
+    /**
+     * The batch is grouped by the buckets of the current table and each run holds its stripe once.
+     * A run whose bucket has already been migrated falls back to one add() per key, which helps with
+     * the migration. One checkLoad() at the end.
+     */
+    public int addAll(List<KeyValue<K, V>> entries) {
+        Table<K, V> t = table;
+        BatchPartition p = BatchPartition.ofEntries(entries, t.length);
+        int added = 0;
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            List<KeyValue<K, V>> run = p.select(entries, start, end);
+            int n = -1;
+            ReentrantReadWriteLock lock = t.lockFor(p.bucket(start));
+            lock.readLock().lock();
+            try {
+                Bucket<K, V> bucket = t.bucket(p.bucket(start));
+                if (bucket != t.forwarding)
+                    n = bucket.addAll(run);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (n < 0) {
+                n = 0;
+                for (KeyValue<K, V> kv : run)
+                    if (add(kv.key, kv.value))
+                        n++;
+            }
+            added += n;
+        }
+        if (added > 0)
+            checkLoad();
+        return added;
+    }
+
+    // Lock-free like get(), a run follows forwarding markers one key at a time.
+    public List<V> getAll(List<K> keys) {
+        Table<K, V> t = table;
+        BatchPartition p = BatchPartition.ofKeys(keys, t.length);
+        List<V> values = BatchPartition.nulls(keys.size());
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            List<K> run = p.select(keys, start, end);
+            Bucket<K, V> bucket = t.bucket(p.bucket(start));
+            if (bucket != t.forwarding) {
+                p.scatter(bucket.getAll(run), values, start);
+            } else {
+                List<V> found = new ArrayList<V>(run.size());
+                for (K key : run)
+                    found.add(get(key));
+                p.scatter(found, values, start);
+            }
+        }
+        return values;
+    }
+
+    public int removeAll(List<K> keys) {
+        Table<K, V> t = table;
+        BatchPartition p = BatchPartition.ofKeys(keys, t.length);
+        int removed = 0;
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            List<K> run = p.select(keys, start, end);
+            int n = -1;
+            ReentrantReadWriteLock lock = t.lockFor(p.bucket(start));
+            lock.readLock().lock();
+            try {
+                Bucket<K, V> bucket = t.bucket(p.bucket(start));
+                if (bucket != t.forwarding)
+                    n = bucket.removeAll(run);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (n < 0) {
+                n = 0;
+                for (K key : run)
+                    if (remove(key))
+                        n++;
+            }
+            removed += n;
+        }
+        if (removed > 0)
+            checkLoad();
+        return removed;
+    }
+
+    /**
+     * The entries of the table, one iterator per bucket that holds some. While a migration is in progress
+     * every bucket of the current table is read in exactly one place: the bucket itself if it had not
+     * been migrated when this was called, or the next table if it had. A bucket migrated since then still
+     * holds its entries, so the copies the next table has of them are skipped; reading both would return
+     * them twice.
+     */
+    private List<Supplier<Iterator<KeyValue<K, V>>>> liveBuckets() {
+        List<Supplier<Iterator<KeyValue<K, V>>>> live = new ArrayList<Supplier<Iterator<KeyValue<K, V>>>>();
+        addLiveBuckets(table, null, live);
+        return live;
+    }
+
+    // Adds the buckets of t to live, keeping only the entries whose key's hash code keep accepts (all if null).
+    private static <K, V> void addLiveBuckets(Table<K, V> t, IntPredicate keep,
+                                              List<Supplier<Iterator<KeyValue<K, V>>>> live) {
+        boolean[] migrated = new boolean[t.length];
+        boolean anyMigrated = false;
+        for (int i = 0; i < t.length; ++i) {
+            Bucket<K, V> bucket = t.buckets.get(i);
+            if (bucket == t.forwarding) {
+                migrated[i] = true;
+                anyMigrated = true;
+            } else if (bucket != null) {
+                live.add(() -> filter(bucket.iterator(), keep));
+            }
+        }
+        // a bucket is only forwarded once the next table holds its entries
+        if (anyMigrated) {
+            IntPredicate fromMigrated = hash -> migrated[t.bHash(hash)];
+            addLiveBuckets(t.forwarding.nextTable, keep == null ? fromMigrated : fromMigrated.and(keep), live);
+        }
+    }
+
+    // The entries of iter whose key's hash code keep accepts.
+    private static <K, V> Iterator<KeyValue<K, V>> filter(Iterator<KeyValue<K, V>> iter, IntPredicate keep) {
+        if (keep == null)
+            return iter;
+        return new Iterator<KeyValue<K, V>>() {
+            private KeyValue<K, V> next = advance();
+
+            private KeyValue<K, V> advance() {
+                while (iter.hasNext()) {
+                    KeyValue<K, V> kv = iter.next();
+                    if (keep.test(kv.key.hashCode()))
+                        return kv;
+                }
+                return null;
+            }
+
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            public KeyValue<K, V> next() {
+                if (next == null)
+                    throw new NoSuchElementException();
+                KeyValue<K, V> kv = next;
+                next = advance();
+                return kv;
+            }
+        };
+    }
+
+    // Walks the live buckets, like iterator().
+    private BucketBulk<K, V> bulk() {
+        List<Supplier<Iterator<KeyValue<K, V>>>> live = liveBuckets();
+        return new BucketBulk<K, V>(live.size(), i -> live.get(i).get(), count.sum());
+    }
+
+    public void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+        bulk().forEach(parallelismThreshold, action);
+    }
+
+    public <U> U search(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        return bulk().search(parallelismThreshold, searchFunction);
+    }
+
+    public <U> U mapReduce(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> transformer,
+                           BinaryOperator<U> reducer) {
+        return bulk().mapReduce(parallelismThreshold, transformer, reducer);
+    }
+
+    public Spliterator<KeyValue<K, V>> spliterator() {
+        return bulk().spliterator();
+    }
+
+    public int size() {
+        return (int) count.sum();
+    }
+
+    public Iterator<KeyValue<K, V>> iterator() {
+        return Spliterators.iterator(bulk().spliterator());
+    }
+}
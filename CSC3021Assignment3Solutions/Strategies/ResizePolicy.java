@@ -0,0 +1,75 @@
+/**
+ * Decides when a Hash should change its number of buckets, based on the average chain length
+ * (entries per bucket). The table grows when the average chain length goes above growLoad and
+ * shrinks when it drops below shrinkLoad. shrinkLoad must be less than half of growLoad, so a table
+ * that has just doubled or halved is never immediately resized back (hysteresis).
+ */
+public final class ResizePolicy {
+    public static final int MAX_BUCKETS = 1 << 30;
+
+    /**
+     * Never resizes on its own; the bucket count only changes when resize() is called.
+     */
+    public static final ResizePolicy FIXED = new ResizePolicy();
+    /**
+     * Grows above four entries per bucket and shrinks below one entry per two buckets.
+     */
+    public static final ResizePolicy DEFAULT = new ResizePolicy(4.0, 0.5, 16);
+
+    private final boolean fixed;
+    private final double growLoad;
+    private final double shrinkLoad;
+    private final int minBuckets;
+
+    private ResizePolicy() {
+        this.fixed = true;
+        this.growLoad = Double.POSITIVE_INFINITY;
+        this.shrinkLoad = 0;
+        this.minBuckets = 1;
+    }
+
+    /**
+     * @param growLoad - average chain length above which the table grows
+     * @param shrinkLoad - average chain length below which the table shrinks, 0 to never shrink
+     * @param minBuckets - the table never shrinks below this many buckets
+     */
+    public ResizePolicy(double growLoad, double shrinkLoad, int minBuckets) {
+        if (!(growLoad > 0))
+            throw new IllegalArgumentException("growLoad must be positive: " + growLoad);
+        if (shrinkLoad < 0 || shrinkLoad * 2 >= growLoad)
+            throw new IllegalArgumentException("shrinkLoad must be at least 0 and less than half of growLoad: "
+                    + shrinkLoad);
+        if (minBuckets < 1)
+            throw new IllegalArgumentException("minBuckets must be positive: " + minBuckets);
+        this.fixed = false;
+        this.growLoad = growLoad;
+        this.shrinkLoad = shrinkLoad;
+        this.minBuckets = minBuckets;
+    }
+
+    public boolean isFixed() {
+        return fixed;
+    }
+
+    /**
+     * Returns the number of buckets a table holding size entries in num_buckets buckets should have,
+     * which is num_buckets itself if no resize is needed. The table doubles or halves as many times as
+     * needed to bring the average chain length back between the two thresholds.
+     */
+    public int targetBuckets(long size, int num_buckets) {
+        if (fixed)
+            return num_buckets;
+        long target = num_buckets;
+        while (size > growLoad * target && target < MAX_BUCKETS)
+            target *= 2;
+        if (target == num_buckets) {
+            while (target / 2 >= minBuckets && size < shrinkLoad * target)
+                target /= 2;
+        }
+        return (int) target;
+    }
+
+    public String toString() {
+        return fixed ? "fixed" : "grow>" + growLoad + ",shrink<" + shrinkLoad + ",min=" + minBuckets;
+    }
+}
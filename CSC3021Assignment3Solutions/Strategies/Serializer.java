@@ -0,0 +1,46 @@
+import java.nio.ByteBuffer;
+
+/**
+ * Writes and reads keys or values of type T as a fixed number of bytes, so that OffHeapHash can store
+ * them in fixed-layout records. Only absolute get/put methods of the buffer may be used, because the
+ * same buffer is read by many threads at once.
+ * @param <T> The type of the keys or values.
+ */
+public interface Serializer<T> {
+    Serializer<Integer> INTEGER = new Serializer<Integer>() {
+        public int byteSize() {
+            return Integer.BYTES;
+        }
+
+        public void write(ByteBuffer buffer, int offset, Integer value) {
+            buffer.putInt(offset, value);
+        }
+
+        public Integer read(ByteBuffer buffer, int offset) {
+            return buffer.getInt(offset);
+        }
+    };
+
+    Serializer<Long> LONG = new Serializer<Long>() {
+        public int byteSize() {
+            return Long.BYTES;
+        }
+
+        public void write(ByteBuffer buffer, int offset, Long value) {
+            buffer.putLong(offset, value);
+        }
+
+        public Long read(ByteBuffer buffer, int offset) {
+            return buffer.getLong(offset);
+        }
+    };
+
+    /**
+     * Number of bytes write() uses for every value.
+     */
+    int byteSize();
+
+    void write(ByteBuffer buffer, int offset, T value);
+
+    T read(ByteBuffer buffer, int offset);
+}
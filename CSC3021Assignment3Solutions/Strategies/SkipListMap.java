@@ -0,0 +1,423 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * A lock-free skip list map (Herlihy and Shavit), an ordered alternative to the Hash. It has the same
+ * add/get/remove contract, keeps every entry sorted by key, and adds floor(), ceiling() and range
+ * iterators. Every level is a Harris-Michael list. A node is removed by the thread that swaps its value
+ * for REMOVED, which then marks its references from the top level down; compute() swaps in a new value
+ * the same way, so it can never update a node that has been removed. Nodes are unlinked by the next
+ * find() that passes them. get() is wait-free and never unlinks anything.
+ * Keys are ordered by the comparator given to the constructor, or by their natural ordering.
+ * There are no buckets, so resize() does nothing.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the list.
+ * @param <V> This is the value. It will be associated with a key in the list.
+ */
+public class SkipListMap<K, V> implements ConcurrentHash<K, V> {
+    private static final int MAX_LEVEL = 31;
+    /**
+     * The value of a node that has been removed.
+     */
+    private static final Object REMOVED = new Object();
+
+    private final Comparator<? super K> comparator;
+    private final Node<K, V> head;
+    private final Node<K, V> tail;
+    private final LongAdder count = new LongAdder();
+
+    private static final class Node<K, V> {
+        final K key;
+        /**
+         * A V, or REMOVED.
+         */
+        final AtomicReference<Object> value;
+        final AtomicMarkableReference<Node<K, V>>[] next;
+        final int topLevel;
+
+        @SuppressWarnings("unchecked")
+        Node(K key, V value, int topLevel) {
+            this.key = key;
+            this.value = new AtomicReference<Object>(value);
+            this.topLevel = topLevel;
+            next = (AtomicMarkableReference<Node<K, V>>[]) new AtomicMarkableReference[topLevel + 1];
+            for (int i = 0; i <= topLevel; ++i)
+                next[i] = new AtomicMarkableReference<Node<K, V>>(null, false);
+        }
+    }
+
+    public SkipListMap() {
+        this(null);
+    }
+
+    /**
+     * @param comparator - orders the keys, null for their natural ordering
+     */
+    public SkipListMap(Comparator<? super K> comparator) {
+        this.comparator = comparator != null ? comparator : SkipListMap::compareNatural;
+        head = new Node<K, V>(null, null, MAX_LEVEL);
+        tail = new Node<K, V>(null, null, MAX_LEVEL);
+        for (int i = 0; i <= MAX_LEVEL; ++i)
+            head.next[i].set(tail, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> int compareNatural(K a, K b) {
+        return ((Comparable<? super K>) a).compareTo(b);
+    }
+
+    // head and tail are never compared, they are recognised by identity.
+    private boolean before(Node<K, V> node, K key) {
+        return node != tail && comparator.compare(node.key, key) < 0;
+    }
+
+    private boolean matches(Node<K, V> node, K key) {
+        return node != tail && comparator.compare(node.key, key) == 0;
+    }
+
+    // The value of node, or null if it has been removed.
+    @SuppressWarnings("unchecked")
+    private static <K, V> V valueOf(Node<K, V> node) {
+        Object value = node.value.get();
+        return value == REMOVED ? null : (V) value;
+    }
+
+    private static int randomLevel() {
+        // level i with probability 2^-(i+1)
+        return Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | (1 << MAX_LEVEL));
+    }
+
+    /**
+     * Fills preds and succs with the nodes either side of key on every level, unlinking every
+     * marked node it passes. Returns true if the bottom-level successor holds key.
+     */
+    private boolean find(K key, Node<K, V>[] preds, Node<K, V>[] succs) {
+        boolean[] marked = {false};
+        retry:
+        while (true) {
+            Node<K, V> pred = head;
+            for (int level = MAX_LEVEL; level >= 0; level--) {
+                Node<K, V> curr = pred.next[level].getReference();
+                while (true) {
+                    Node<K, V> succ = curr.next[level].get(marked);
+                    while (marked[0]) {
+                        if (!pred.next[level].compareAndSet(curr, succ, false, false))
+                            continue retry;
+                        curr = succ;
+                        succ = curr.next[level].get(marked);
+                    }
+                    if (before(curr, key)) {
+                        pred = curr;
+                        curr = succ;
+                    } else {
+                        break;
+                    }
+                }
+                preds[level] = pred;
+                succs[level] = curr;
+            }
+            return matches(succs[0], key);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Node<K, V>[] newNodeArray() {
+        return (Node<K, V>[]) new Node[MAX_LEVEL + 1];
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        int topLevel = randomLevel();
+        Node<K, V>[] preds = newNodeArray();
+        Node<K, V>[] succs = newNodeArray();
+        while (true) {
+            if (find(key, preds, succs)) {
+                if (succs[0].value.get() != REMOVED)
+                    return false;
+                // removed but not marked yet, help so that find() unlinks it
+                markNode(succs[0]);
+                continue;
+            }
+            Node<K, V> node = new Node<K, V>(key, value, topLevel);
+            if (link(node, preds, succs))
+                return true;
+        }
+    }
+
+    /**
+     * Links node, which find() placed between preds and succs, into every level of the list.
+     * Returns false, leaving the node out, if the bottom level changed since find() looked at it.
+     */
+    private boolean link(Node<K, V> node, Node<K, V>[] preds, Node<K, V>[] succs) {
+        for (int level = 0; level <= node.topLevel; ++level)
+            node.next[level].set(succs[level], false);
+        // the node is in the map once it is linked on the bottom level
+        if (!preds[0].next[0].compareAndSet(succs[0], node, false, false))
+            return false;
+        count.increment();
+        for (int level = 1; level <= node.topLevel; ++level) {
+            while (true) {
+                Node<K, V> succ = succs[level];
+                Node<K, V> next = node.next[level].getReference();
+                // the node may be removed before it is fully linked, then stop linking it
+                if (next != succ && !node.next[level].compareAndSet(next, succ, false, false))
+                    return true;
+                if (preds[level].next[level].compareAndSet(succ, node, false, false))
+                    break;
+                find(node.key, preds, succs);
+                if (succs[0] != node)
+                    return true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Notice a reading thread will not be required to wait, it skips marked nodes without unlinking them.
+     */
+    public V get(K key) {
+        Node<K, V> curr = findNode(key);
+        return matches(curr, key) ? valueOf(curr) : null;
+    }
+
+    /**
+     * The first unmarked node whose key is not before key, or tail.
+     */
+    private Node<K, V> findNode(K key) {
+        Node<K, V> curr = nextLive(lastBefore(key));
+        // nodes inserted after lastBefore() passed their place are still before key
+        while (before(curr, key))
+            curr = nextLive(curr);
+        return curr;
+    }
+
+    // The last node whose key is before key (head if there is none), without unlinking anything.
+    private Node<K, V> lastBefore(K key) {
+        boolean[] marked = {false};
+        Node<K, V> pred = head;
+        for (int level = MAX_LEVEL; level >= 0; level--) {
+            Node<K, V> curr = pred.next[level].getReference();
+            while (true) {
+                Node<K, V> succ = curr.next[level].get(marked);
+                while (marked[0]) {
+                    curr = succ;
+                    succ = curr.next[level].get(marked);
+                }
+                if (before(curr, key)) {
+                    pred = curr;
+                    curr = succ;
+                } else {
+                    break;
+                }
+            }
+        }
+        return pred;
+    }
+
+    // The first node after node on the bottom level that is neither marked nor removed, or tail.
+    private Node<K, V> nextLive(Node<K, V> node) {
+        Node<K, V> curr = node.next[0].getReference();
+        while (curr != tail && (curr.next[0].isMarked() || curr.value.get() == REMOVED))
+            curr = curr.next[0].getReference();
+        return curr;
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        Node<K, V>[] preds = newNodeArray();
+        Node<K, V>[] succs = newNodeArray();
+        while (true) {
+            if (!find(key, preds, succs))
+                return false;
+            Node<K, V> node = succs[0];
+            Object value = node.value.get();
+            if (value == REMOVED) {
+                // another thread removed it, help it and look again
+                markNode(node);
+                continue;
+            }
+            // whoever swaps in REMOVED has removed the node
+            if (node.value.compareAndSet(value, REMOVED)) {
+                count.decrement();
+                markNode(node);
+                find(key, preds, succs);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Atomically replaces the value of key's node with a compareAndSet, which fails if another thread
+     * changed or removed it first; then remapping is applied again.
+     */
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int topLevel = randomLevel();
+        Node<K, V>[] preds = newNodeArray();
+        Node<K, V>[] succs = newNodeArray();
+        while (true) {
+            if (!find(key, preds, succs)) {
+                V value = remapping.apply(key, null);
+                if (value == null)
+                    return null;
+                if (link(new Node<K, V>(key, value, topLevel), preds, succs))
+                    return value;
+                continue;
+            }
+            Node<K, V> node = succs[0];
+            Object old = node.value.get();
+            if (old == REMOVED) {
+                markNode(node);
+                continue;
+            }
+            @SuppressWarnings("unchecked")
+            V value = remapping.apply(key, (V) old);
+            if (value == old)
+                return value;
+            if (!node.value.compareAndSet(old, value == null ? REMOVED : value))
+                continue;
+            if (value == null) {
+                count.decrement();
+                markNode(node);
+                find(key, preds, succs);
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Marks the references of a removed node, the upper levels first since they are only shortcuts.
+     * Any thread may do this once the value is REMOVED.
+     */
+    private void markNode(Node<K, V> node) {
+        boolean[] marked = {false};
+        for (int level = node.topLevel; level >= 0; level--) {
+            Node<K, V> succ = node.next[level].get(marked);
+            while (!marked[0]) {
+                node.next[level].compareAndSet(succ, succ, false, true);
+                succ = node.next[level].get(marked);
+            }
+        }
+    }
+
+    /**
+     * The entry with the greatest key less than or equal to key, or null if there is none.
+     */
+    public KeyValue<K, V> floor(K key) {
+        while (true) {
+            Node<K, V> ceiling = findNode(key);
+            if (matches(ceiling, key)) {
+                V value = valueOf(ceiling);
+                if (value != null)
+                    return new KeyValue<K, V>(ceiling.key, value);
+                continue;
+            }
+            Node<K, V> pred = lastBefore(key);
+            if (pred == head)
+                return null;
+            V value = valueOf(pred);
+            if (value != null)
+                return new KeyValue<K, V>(pred.key, value);
+            // removed but not marked yet, help so that lastBefore() skips it
+            markNode(pred);
+        }
+    }
+
+    /**
+     * The entry with the least key greater than or equal to key, or null if there is none.
+     */
+    public KeyValue<K, V> ceiling(K key) {
+        while (true) {
+            Node<K, V> node = findNode(key);
+            if (node == tail)
+                return null;
+            V value = valueOf(node);
+            if (value != null)
+                return new KeyValue<K, V>(node.key, value);
+        }
+    }
+
+    public int getArraySize() {
+        return 0;
+    }
+
+    public void resize(int new_num_buckets) {
+        // there are no buckets to resize
+    }
+
+    public int size() {
+        return (int) count.sum();
+    }
+
+    /**
+     * Every entry, in key order.
+     */
+    public Iterator<KeyValue<K, V>> iterator() {
+        return new RangeIterator(null, null);
+    }
+
+    /**
+     * The entries with keys from fromKey (inclusive) to toKey (exclusive), in key order.
+     * Either bound may be null for no bound.
+     */
+    public Iterator<KeyValue<K, V>> range(K fromKey, K toKey) {
+        return new RangeIterator(fromKey, toKey);
+    }
+
+    /**
+     * Walks the bottom level from the last node before fromKey, skipping marked and removed nodes.
+     * Entries added or removed while it runs may or may not be seen. The next entry is read ahead, so
+     * that hasNext() and next() agree even if it is removed in between.
+     */
+    private class RangeIterator implements Iterator<KeyValue<K, V>> {
+        private Node<K, V> cur;
+        // Cleared once the walk has passed it.
+        private K fromKey;
+        private final K toKey;
+        private KeyValue<K, V> next;
+
+        RangeIterator(K fromKey, K toKey) {
+            this.cur = fromKey == null ? head : lastBefore(fromKey);
+            this.fromKey = fromKey;
+            this.toKey = toKey;
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (true) {
+                Node<K, V> n = nextLive(cur);
+                if (n == tail || (toKey != null && !before(n, toKey)))
+                    return;
+                cur = n;
+                // nodes inserted after cur until the walk passes fromKey are still before it
+                if (fromKey != null) {
+                    if (before(n, fromKey))
+                        continue;
+                    fromKey = null;
+                }
+                V value = valueOf(n);
+                if (value != null) {
+                    next = new KeyValue<K, V>(n.key, value);
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public KeyValue<K, V> next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            KeyValue<K, V> kv = next;
+            advance();
+            return kv;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * A lock-free split-ordered Hash (Shalev and Shavit). Every entry lives in one lock-free list that is
+ * sorted by the bit-reversed hash code, so the entries of a bucket are always contiguous and a bucket
+ * splits into two by inserting a single sentinel node in the middle of it. The buckets are only
+ * shortcuts (sentinel nodes) into that list and are initialized lazily the first time they are used,
+ * so growing the table never moves a node and never blocks an operation. The ResizePolicy decides
+ * when the bucket count doubles or halves.
+ * compute() replaces a node in a single compareAndSet that marks it and points it at its replacement.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the list.
+ * @param <V> This is the value. It will be associated with a key in the list.
+ */
+public class SplitOrderedHash<K, V> implements ConcurrentHash<K, V> {
+    /**
+     * Buckets are stored in segments of growing size (1, 1, 2, 4, 8, ...) so that the bucket
+     * array can grow without copying. Segment k holds the buckets [2^(k-1), 2^k).
+     */
+    private static final int NUM_SEGMENTS = 32;
+    private static final int MAX_BUCKETS = ResizePolicy.MAX_BUCKETS;
+
+    private final ResizePolicy policy;
+    private final Node head;
+    private final AtomicReferenceArray<AtomicReferenceArray<Node>> segments;
+    private final AtomicInteger bucketSize;
+    private final LongAdder setSize;
+
+    private class Node {
+        final long order;
+        final K key;
+        final V value;
+        /**
+         * The mark on this reference means that this node (not its successor) has been removed.
+         */
+        final AtomicMarkableReference<Node> next;
+
+        public Node(long order, K key, V value, Node next) {
+            this.order = order;
+            this.key = key;
+            this.value = value;
+            this.next = new AtomicMarkableReference<Node>(next, false);
+        }
+
+        boolean isSentinel() {
+            return (order & 1) == 0;
+        }
+    }
+
+    /**
+     * The pair of adjacent nodes found by find().
+     */
+    private class Window {
+        final Node pred;
+        final Node curr;
+
+        Window(Node pred, Node curr) {
+            this.pred = pred;
+            this.curr = curr;
+        }
+    }
+
+    public SplitOrderedHash(int num_buckets_) {
+        this(num_buckets_, ResizePolicy.DEFAULT);
+    }
+
+    public SplitOrderedHash(int num_buckets_, ResizePolicy policy) {
+        this.policy = policy;
+        // the tail has an order larger than any reversed 32-bit hash code
+        Node tail = new Node(1L << 32, null, null, null);
+        head = new Node(0, null, null, tail);
+        segments = new AtomicReferenceArray<AtomicReferenceArray<Node>>(NUM_SEGMENTS);
+        bucketSize = new AtomicInteger(roundUp(num_buckets_));
+        setSize = new LongAdder();
+        bucketSlot(0).set(0, head);
+    }
+
+    private static int roundUp(int n) {
+        if (n <= 1)
+            return 1;
+        if (n >= MAX_BUCKETS)
+            return MAX_BUCKETS;
+        return Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /**
+     * Bucket sentinels use the reversed bucket index (lowest bit clear), regular nodes the reversed
+     * hash code with the lowest bit set, so a bucket's sentinel sorts just before its entries.
+     */
+    private static long regularOrder(int hash) {
+        return (Integer.reverse(hash & 0x7FFFFFFF) & 0xFFFFFFFFL) | 1;
+    }
+
+    private static long sentinelOrder(int bucket) {
+        return Integer.reverse(bucket) & 0xFFFFFFFFL;
+    }
+
+    // The parent of a bucket is the bucket it split from: its index with the highest set bit cleared.
+    private static int getParent(int bucket) {
+        return bucket & ~Integer.highestOneBit(bucket);
+    }
+
+    /**
+     * The segment that holds the slot for bucket, allocated on first use.
+     */
+    private AtomicReferenceArray<Node> bucketSlot(int bucket) {
+        int segment = 32 - Integer.numberOfLeadingZeros(bucket);
+        AtomicReferenceArray<Node> slots = segments.get(segment);
+        if (slots == null) {
+            int length = segment == 0 ? 1 : 1 << (segment - 1);
+            segments.compareAndSet(segment, null, new AtomicReferenceArray<Node>(length));
+            slots = segments.get(segment);
+        }
+        return slots;
+    }
+
+    private static int slotIndex(int bucket) {
+        return bucket == 0 ? 0 : bucket - Integer.highestOneBit(bucket);
+    }
+
+    private Node getBucket(int bucket) {
+        Node sentinel = bucketSlot(bucket).get(slotIndex(bucket));
+        if (sentinel == null)
+            sentinel = initializeBucket(bucket);
+        return sentinel;
+    }
+
+    /**
+     * Inserts the sentinel for bucket into the list, starting from its parent's sentinel (which is
+     * initialized first if needed). If another thread gets there first its sentinel is used instead.
+     */
+    private Node initializeBucket(int bucket) {
+        Node parent = getBucket(getParent(bucket));
+        long order = sentinelOrder(bucket);
+        Node sentinel;
+        while (true) {
+            Window window = find(parent, order, null);
+            if (window.curr.order == order) {
+                sentinel = window.curr;
+                break;
+            }
+            Node node = new Node(order, null, null, window.curr);
+            if (window.pred.next.compareAndSet(window.curr, node, false, false)) {
+                sentinel = node;
+                break;
+            }
+        }
+        bucketSlot(bucket).compareAndSet(slotIndex(bucket), null, sentinel);
+        return sentinel;
+    }
+
+    /**
+     * Finds the first node at or after start whose order is greater than order, or equal to it with
+     * a matching key, unlinking every marked node it passes on the way. A null key matches sentinels.
+     */
+    private Window find(Node start, long order, K key) {
+        Node pred, curr, succ;
+        boolean[] marked = {false};
+        retry:
+        while (true) {
+            pred = start;
+            curr = pred.next.getReference();
+            while (true) {
+                succ = curr.next.get(marked);
+                while (marked[0]) {
+                    if (!pred.next.compareAndSet(curr, succ, false, false))
+                        continue retry;
+                    curr = succ;
+                    succ = curr.next.get(marked);
+                }
+                if (curr.order > order || (curr.order == order && (key == null || key.equals(curr.key))))
+                    return new Window(pred, curr);
+                pred = curr;
+                curr = succ;
+            }
+        }
+    }
+
+    private Node bucketFor(int hash) {
+        return getBucket((hash & 0x7FFFFFFF) & (bucketSize.get() - 1));
+    }
+
+    /**
+     * Changing the bucket count is a single compareAndSet, if it fails another thread has just changed it.
+     */
+    private void checkLoad(long count) {
+        int num_buckets = bucketSize.get();
+        int target = policy.targetBuckets(count, num_buckets);
+        if (target != num_buckets)
+            bucketSize.compareAndSet(num_buckets, roundUp(target));
+    }
+
+    public int getArraySize() {
+        return bucketSize.get();
+    }
+
+    /**
+     * Resizing only changes how many buckets new operations use (rounded up to a power of two).
+     * No node moves: the sentinels of new buckets are inserted lazily by the first operation that
+     * needs them, and the sentinels of unused buckets stay in the list as harmless shortcuts.
+     */
+    public void resize(int new_num_buckets) {
+        bucketSize.set(roundUp(new_num_buckets));
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        int hash = key.hashCode();
+        long order = regularOrder(hash);
+        Node bucket = bucketFor(hash);
+        while (true) {
+            Window window = find(bucket, order, key);
+            if (window.curr.order == order) {
+                return false;
+            }
+            Node node = new Node(order, key, value, window.curr);
+            if (window.pred.next.compareAndSet(window.curr, node, false, false)) {
+                break;
+            }
+        }
+        setSize.increment();
+        checkLoad(setSize.sum());
+        return true;
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        int hash = key.hashCode();
+        long order = regularOrder(hash);
+        Node curr = bucketFor(hash);
+        // a node replaced by compute() is marked and followed by its replacement
+        while (curr.order < order || (curr.order == order && (!key.equals(curr.key) || curr.next.isMarked()))) {
+            curr = curr.next.getReference();
+        }
+        return curr.order == order ? curr.value : null;
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        int hash = key.hashCode();
+        long order = regularOrder(hash);
+        Node bucket = bucketFor(hash);
+        while (true) {
+            Window window = find(bucket, order, key);
+            Node pred = window.pred, curr = window.curr;
+            if (curr.order != order) {
+                return false;
+            }
+            Node succ = curr.next.getReference();
+            // logical removal, only one thread can mark curr
+            if (!curr.next.compareAndSet(succ, succ, false, true)) {
+                continue;
+            }
+            // physical removal, if this fails the next find() over this node unlinks it
+            pred.next.compareAndSet(curr, succ, false, false);
+            setSize.decrement();
+            checkLoad(setSize.sum());
+            return true;
+        }
+    }
+
+    // Find key once and apply remapping to its value, with a compareAndSet that fails if it changed.
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = key.hashCode();
+        long order = regularOrder(hash);
+        Node bucket = bucketFor(hash);
+        while (true) {
+            Window window = find(bucket, order, key);
+            Node pred = window.pred, curr = window.curr;
+            if (curr.order != order) {
+                V value = remapping.apply(key, null);
+                if (value == null) {
+                    return null;
+                }
+                Node node = new Node(order, key, value, curr);
+                if (!pred.next.compareAndSet(curr, node, false, false)) {
+                    continue;
+                }
+                setSize.increment();
+                checkLoad(setSize.sum());
+                return value;
+            }
+            V value = remapping.apply(key, curr.value);
+            if (value == curr.value) {
+                return value;
+            }
+            Node succ = curr.next.getReference();
+            Node next = value == null ? succ : new Node(order, curr.key, value, succ);
+            if (!curr.next.compareAndSet(succ, next, false, true)) {
+                continue;
+            }
+            pred.next.compareAndSet(curr, next, false, false);
+            if (value == null) {
+                setSize.decrement();
+                checkLoad(setSize.sum());
+            }
+            return value;
+        }
+    }
+
+    public int size() {
+        return (int) setSize.sum();
+    }
+
+    public java.util.Iterator<KeyValue<K, V>> iterator() {
+        return new ListIterator();
+    }
+
+    /**
+     * Walks the whole list in split order, skipping sentinels and removed nodes. A node that compute()
+     * replaced after it was returned points at its replacement, which is skipped too, so that the key
+     * does not come back.
+     */
+    private class ListIterator implements java.util.Iterator<KeyValue<K, V>> {
+        private Node cur = head;
+
+        private Node nextLive() {
+            Node n = cur.next.getReference();
+            while (n.next.getReference() != null && (n.isSentinel() || n.next.isMarked() || replaces(n)))
+                n = n.next.getReference();
+            return n;
+        }
+
+        // Whether n holds the same key as the node returned last, so it can only be its replacement.
+        private boolean replaces(Node n) {
+            return !cur.isSentinel() && n.order == cur.order && n.key.equals(cur.key);
+        }
+
+        public boolean hasNext() {
+            return nextLive().next.getReference() != null;
+        }
+
+        public KeyValue<K, V> next() {
+            Node n = nextLive();
+            if (n.next.getReference() == null)
+                throw new NoSuchElementException();
+            cur = n;
+            return new KeyValue<K, V>(cur.key, cur.value);
+        }
+    }
+}
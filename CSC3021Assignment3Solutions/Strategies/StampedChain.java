@@ -0,0 +1,286 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The Q3 Chain with its read/write lock replaced by a StampedLock. get() first traverses the chain
+ * without locking at all, under an optimistic read stamp, and only takes the read lock if a writer
+ * held the lock in the meantime. A lookup that does not overlap a writer therefore writes nothing to
+ * shared memory, so read-heavy workloads do not bounce the lock's cache line between cores.
+ * add() and remove() take the write lock as in Q3.
+ */
+class StampedChain<K, V> implements Bucket<K, V> {
+    private final Node head;
+    private final LongAdder counter;
+    private final StampedLock lock = new StampedLock();
+
+    // This iterator is only required for Q6 and
+    // may otherwise be ignored.
+    public class ChainIterator implements java.util.Iterator<KeyValue<K, V>> {
+        private Node cur;
+
+        public ChainIterator() {
+            cur = head;
+        }
+
+        public boolean hasNext() {
+            return cur.next != null
+                    && cur.next.hash != Integer.MAX_VALUE;
+        }
+
+        public KeyValue<K, V> next() {
+            cur = cur.next;
+            return new KeyValue<K, V>(cur.key, cur.value);
+        }
+    }
+
+    public java.util.Iterator<KeyValue<K, V>> iterator() {
+        return new ChainIterator();
+    }
+
+    // The nodes have no volatile fields, so the chain is copied under the lock its writers hold.
+    public java.util.Iterator<KeyValue<K, V>> snapshot() {
+        long stamp = lock.readLock();
+        try {
+            return Bucket.super.snapshot();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * hash, key and value are final so that an optimistic reader that reaches a node sees them
+     * initialized, whatever it sees of next. compute() therefore replaces a node rather than
+     * changing its value.
+     */
+    private class Node {
+        final int hash;
+        final K key;
+        final V value;
+        Node next;
+
+        public Node(int hash) {
+            this(hash, null, null);
+        }
+
+        public Node(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+            this.next = null;
+        }
+    }
+
+    public StampedChain() {
+        this(new LongAdder());
+    }
+
+    public StampedChain(LongAdder counter) {
+        this.counter = counter;
+        Node tail = new Node(Integer.MAX_VALUE);
+        head = new Node(Integer.MIN_VALUE);
+        head.next = tail;
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        Node pred, curr;
+        int hash = key.hashCode();
+        long stamp = lock.writeLock();
+        try {
+            pred = head;
+            curr = pred.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            if (hash == curr.hash) {
+                return false;
+            } else {
+                Node node = new Node(hash, key, value);
+                node.next = curr;
+                pred.next = node;
+                counter.increment();
+                return true;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        int hash = key.hashCode();
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            // a concurrent writer can leave this traversal looking at a node whose next it cannot see
+            // yet, so a null next ends it, and nothing read here is used unless the stamp validates
+            Node curr = head.next;
+            while (curr != null && curr.hash < hash) {
+                curr = curr.next;
+            }
+            V value = curr != null && hash == curr.hash ? curr.value : null;
+            if (curr != null && lock.validate(stamp)) {
+                return value;
+            }
+        }
+        // a writer got in the way, look again under the read lock
+        stamp = lock.readLock();
+        try {
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                curr = curr.next;
+            }
+            return (hash == curr.hash) ? curr.value : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        Node pred, curr;
+        int hash = key.hashCode();
+        long stamp = lock.writeLock();
+        try {
+            pred = head;
+            curr = pred.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            if (hash == curr.hash) {
+                pred.next = curr.next;
+                counter.decrement();
+                return true;
+            } else {
+                return false;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Find key once and apply remapping to its value under the same lock.
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        Node pred, curr;
+        int hash = key.hashCode();
+        long stamp = lock.writeLock();
+        try {
+            pred = head;
+            curr = pred.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            if (hash == curr.hash) {
+                V value = remapping.apply(key, curr.value);
+                if (value == null) {
+                    pred.next = curr.next;
+                    counter.decrement();
+                } else if (value != curr.value) {
+                    Node node = new Node(hash, curr.key, value);
+                    node.next = curr.next;
+                    pred.next = node;
+                }
+                return value;
+            }
+            V value = remapping.apply(key, null);
+            if (value != null) {
+                Node node = new Node(hash, key, value);
+                node.next = curr;
+                pred.next = node;
+                counter.increment();
+            }
+            return value;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Insert the sorted entries, holding the lock once for the whole walk.
+    public int addAll(List<KeyValue<K, V>> sorted) {
+        int added = 0;
+        long stamp = lock.writeLock();
+        try {
+            Node pred = head;
+            Node curr = pred.next;
+            for (KeyValue<K, V> kv : sorted) {
+                int hash = kv.key.hashCode();
+                while (curr.hash < hash) {
+                    pred = curr;
+                    curr = curr.next;
+                }
+                if (hash != curr.hash) {
+                    Node node = new Node(hash, kv.key, kv.value);
+                    node.next = curr;
+                    pred.next = node;
+                    counter.increment();
+                    added++;
+                    // so that a duplicate later in the batch finds it
+                    curr = node;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return added;
+    }
+
+    // Lookup the sorted keys in one walk.
+    public List<V> getAll(List<K> sorted) {
+        List<V> values = new ArrayList<V>(sorted.size());
+        long stamp = lock.readLock();
+        try {
+            Node curr = head.next;
+            for (K key : sorted) {
+                int hash = key.hashCode();
+                while (curr.hash < hash) {
+                    curr = curr.next;
+                }
+                values.add((hash == curr.hash) ? curr.value : null);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return values;
+    }
+
+    // Remove the sorted keys in one walk.
+    public int removeAll(List<K> sorted) {
+        int removed = 0;
+        long stamp = lock.writeLock();
+        try {
+            Node pred = head;
+            Node curr = pred.next;
+            for (K key : sorted) {
+                int hash = key.hashCode();
+                while (curr.hash < hash) {
+                    pred = curr;
+                    curr = curr.next;
+                }
+                if (hash == curr.hash) {
+                    pred.next = curr.next;
+                    curr = curr.next;
+                    counter.decrement();
+                    removed++;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+        Node n = head.next;
+        while (n.next != null) {
+            size++;
+            n = n.next;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,426 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+
+/**
+ * A lock-striped Hash with a refinable lock array. The chains themselves are the unsynchronized Q1
+ * chains, guarded by a separate array of lock stripes: bucket i is guarded by stripe i % locks.length.
+ * The number of locks does not depend on the number of buckets, so resize() keeps the same lock
+ * array and only has to quiesce the table by acquiring every stripe in turn.
+ * The lock array itself only grows when contention is measured: each acquisition first tries
+ * tryLock(), and when too many of them fail the number of stripes is doubled.
+ * @param <K> This is a Key. It will be used as an identifier for a value in the chain.
+ * @param <V> This is the value. It will be associated with a key in the chain.
+ */
+public class StripedHash<K, V> implements ConcurrentHash<K, V> {
+    private static final int INITIAL_STRIPES = 16;
+    private static final int MAX_STRIPES = 1 << 16;
+    /**
+     * The lock array is refined once more than 1 in CONTENTION_RATIO acquisitions had to wait,
+     * measured over at least MIN_SAMPLES acquisitions since the last refinement.
+     */
+    private static final int CONTENTION_RATIO = 8;
+    private static final int MIN_SAMPLES = 1 << 12;
+
+    private final ResizePolicy policy;
+    private volatile Bucket<K, V>[] buckets;
+    private volatile ReentrantLock[] locks;
+    /**
+     * Shared by every chain in buckets. resize() builds the new chains with a new counter.
+     */
+    private volatile LongAdder count;
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+
+    public StripedHash(int num_buckets_) {
+        this(num_buckets_, ResizePolicy.DEFAULT);
+    }
+
+    public StripedHash(int num_buckets_, ResizePolicy policy) {
+        this.policy = policy;
+        count = new LongAdder();
+        buckets = newBucketArray(num_buckets_, count);
+        locks = newLockArray(INITIAL_STRIPES);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Bucket<K, V>[] newBucketArray(int n, LongAdder counter) {
+        Bucket<K, V>[] array = (Bucket<K, V>[]) new Bucket[n];
+        for (int i = 0; i < n; ++i)
+            array[i] = new CoarseChain<K, V>(counter);
+        return array;
+    }
+
+    private static ReentrantLock[] newLockArray(int n) {
+        ReentrantLock[] array = new ReentrantLock[n];
+        for (int i = 0; i < n; ++i)
+            array[i] = new ReentrantLock();
+        return array;
+    }
+
+    private static int bHash(int hash, int num_buckets) {
+        return Math.abs(hash % num_buckets);
+    }
+
+    /**
+     * Locks the stripe that guards bucket bhash of the given bucket array. Returns null (holding no lock)
+     * if the bucket array or the lock array was replaced before the lock was acquired, in which case
+     * the caller has to start again with the new arrays. A thread that would have to wait for the
+     * stripe first checks whether the lock array should be refined.
+     */
+    private ReentrantLock acquire(Bucket<K, V>[] b, int bhash) {
+        ReentrantLock[] l = locks;
+        ReentrantLock lock = l[bhash % l.length];
+        acquired.increment();
+        if (!lock.tryLock()) {
+            contended.increment();
+            if (tooContended(l)) {
+                refine();
+                return null;
+            }
+            lock.lock();
+        }
+        if (b == buckets && l == locks)
+            return lock;
+        lock.unlock();
+        return null;
+    }
+
+    /**
+     * Acquires every stripe of the current lock array, in order, so that no other operation is running.
+     */
+    private ReentrantLock[] acquireAll() {
+        while (true) {
+            ReentrantLock[] l = locks;
+            for (ReentrantLock lock : l)
+                lock.lock();
+            if (l == locks)
+                return l;
+            // the lock array was refined while we were waiting
+            releaseAll(l);
+        }
+    }
+
+    private static void releaseAll(ReentrantLock[] l) {
+        for (ReentrantLock lock : l)
+            lock.unlock();
+    }
+
+    public int getArraySize() {
+        return buckets.length;
+    }
+
+    public void resize(int new_num_buckets) {
+        ReentrantLock[] l = acquireAll();
+        try {
+            rehash(new_num_buckets);
+        } finally {
+            releaseAll(l);
+        }
+    }
+
+    // Called with every stripe held.
+    private void rehash(int new_num_buckets) {
+        Bucket<K, V>[] old_buckets = buckets;
+        if (new_num_buckets == old_buckets.length)
+            return;
+        LongAdder new_count = new LongAdder();
+        Bucket<K, V>[] new_buckets = newBucketArray(new_num_buckets, new_count);
+        // Iterate and rehash
+        for (int i = 0; i < old_buckets.length; ++i) {
+            Iterator<KeyValue<K, V>> iter = old_buckets[i].iterator();
+            while (iter.hasNext()) {
+                KeyValue<K, V> kv = iter.next();
+                new_buckets[bHash(kv.key.hashCode(), new_num_buckets)].add(kv.key, kv.value);
+            }
+        }
+        count = new_count;
+        buckets = new_buckets;
+    }
+
+    // More stripes than buckets would not spread the contention any further.
+    private boolean tooContended(ReentrantLock[] l) {
+        if (l.length >= MAX_STRIPES || l.length >= buckets.length)
+            return false;
+        long samples = acquired.sum();
+        return samples >= MIN_SAMPLES && contended.sum() * CONTENTION_RATIO >= samples;
+    }
+
+    /**
+     * Doubles the number of stripes if contention is still high once every stripe is held.
+     * Threads waiting on an old stripe notice that the lock array changed and retry with the new one.
+     */
+    private void refine() {
+        ReentrantLock[] l = acquireAll();
+        try {
+            if (!tooContended(l))
+                return;
+            acquired.reset();
+            contended.reset();
+            locks = newLockArray(l.length * 2);
+        } finally {
+            releaseAll(l);
+        }
+    }
+
+    /**
+     * Resizes the table if the policy asks for it. This runs after the operation has released its
+     * stripe, because a resize needs every stripe.
+     */
+    private void checkLoad() {
+        int num_buckets = buckets.length;
+        if (policy.targetBuckets(count.sum(), num_buckets) != num_buckets) {
+            ReentrantLock[] l = acquireAll();
+            try {
+                // another thread may have resized while we were acquiring the stripes
+                int target = policy.targetBuckets(count.sum(), buckets.length);
+                rehash(target);
+            } finally {
+                releaseAll(l);
+            }
+        }
+    }
+
+    public boolean add(K key, V value) {
+        int hash = key.hashCode();
+        boolean added;
+        while (true) {
+            Bucket<K, V>[] b = buckets;
+            int bhash = bHash(hash, b.length);
+            ReentrantLock lock = acquire(b, bhash);
+            if (lock == null)
+                continue;
+            try {
+                added = b[bhash].add(key, value);
+                break;
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (added)
+            checkLoad();
+        return added;
+    }
+
+    public V get(K key) {
+        int hash = key.hashCode();
+        while (true) {
+            Bucket<K, V>[] b = buckets;
+            int bhash = bHash(hash, b.length);
+            ReentrantLock lock = acquire(b, bhash);
+            if (lock == null)
+                continue;
+            try {
+                return b[bhash].get(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public boolean remove(K key) {
+        int hash = key.hashCode();
+        boolean removed;
+        while (true) {
+            Bucket<K, V>[] b = buckets;
+            int bhash = bHash(hash, b.length);
+            ReentrantLock lock = acquire(b, bhash);
+            if (lock == null)
+                continue;
+            try {
+                removed = b[bhash].remove(key);
+                break;
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (removed)
+            checkLoad();
+        return removed;
+    }
+
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = key.hashCode();
+        V value;
+        while (true) {
+            Bucket<K, V>[] b = buckets;
+            int bhash = bHash(hash, b.length);
+            ReentrantLock lock = acquire(b, bhash);
+            if (lock == null)
+                continue;
+            try {
+                value = b[bhash].compute(key, remapping);
+                break;
+            } finally {
+                lock.unlock();
+            }
+        }
+        checkLoad();
+        return value;
+    }
+
+    /**
+     * The batch is grouped by bucket and each run takes its stripe once. A run that finds the table
+     * resized or the stripes refined falls back to one operation per key. One checkLoad() at the end.
+     */
+    public int addAll(List<KeyValue<K, V>> entries) {
+        Bucket<K, V>[] b = buckets;
+        BatchPartition p = BatchPartition.ofEntries(entries, b.length);
+        int added = 0;
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            List<KeyValue<K, V>> run = p.select(entries, start, end);
+            ReentrantLock lock = acquire(b, p.bucket(start));
+            if (lock == null) {
+                for (KeyValue<K, V> kv : run)
+                    if (add(kv.key, kv.value))
+                        added++;
+                continue;
+            }
+            try {
+                added += b[p.bucket(start)].addAll(run);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (added > 0)
+            checkLoad();
+        return added;
+    }
+
+    public List<V> getAll(List<K> keys) {
+        Bucket<K, V>[] b = buckets;
+        BatchPartition p = BatchPartition.ofKeys(keys, b.length);
+        List<V> values = BatchPartition.nulls(keys.size());
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            List<K> run = p.select(keys, start, end);
+            ReentrantLock lock = acquire(b, p.bucket(start));
+            if (lock == null) {
+                List<V> found = new ArrayList<V>(run.size());
+                for (K key : run)
+                    found.add(get(key));
+                p.scatter(found, values, start);
+                continue;
+            }
+            try {
+                p.scatter(b[p.bucket(start)].getAll(run), values, start);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return values;
+    }
+
+    public int removeAll(List<K> keys) {
+        Bucket<K, V>[] b = buckets;
+        BatchPartition p = BatchPartition.ofKeys(keys, b.length);
+        int removed = 0;
+        for (int start = 0, end; start < p.size(); start = end) {
+            end = p.runEnd(start);
+            List<K> run = p.select(keys, start, end);
+            ReentrantLock lock = acquire(b, p.bucket(start));
+            if (lock == null) {
+                for (K key : run)
+                    if (remove(key))
+                        removed++;
+                continue;
+            }
+            try {
+                removed += b[p.bucket(start)].removeAll(run);
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (removed > 0)
+            checkLoad();
+        return removed;
+    }
+
+    /**
+     * The bulk operations copy one bucket at a time while holding its stripe, and run the action on the copy.
+     */
+    private BucketBulk<K, V> bulk() {
+        Bucket<K, V>[] b = buckets;
+        return new BucketBulk<K, V>(b.length, i -> copyBucket(b, i), count.sum());
+    }
+
+    private Iterator<KeyValue<K, V>> copyBucket(Bucket<K, V>[] b, int i) {
+        List<KeyValue<K, V>> entries = new ArrayList<KeyValue<K, V>>();
+        while (true) {
+            ReentrantLock lock = acquire(b, i);
+            if (lock == null && b == buckets)
+                continue; // only the stripes were refined, try again with the new ones
+            try {
+                // once the table has been resized nothing changes the old chains any more
+                Iterator<KeyValue<K, V>> iter = b[i].iterator();
+                while (iter.hasNext())
+                    entries.add(iter.next());
+                return entries.iterator();
+            } finally {
+                if (lock != null)
+                    lock.unlock();
+            }
+        }
+    }
+
+    public void forEach(long parallelismThreshold, BiConsumer<? super K, ? super V> action) {
+        bulk().forEach(parallelismThreshold, action);
+    }
+
+    public <U> U search(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> searchFunction) {
+        return bulk().search(parallelismThreshold, searchFunction);
+    }
+
+    public <U> U mapReduce(long parallelismThreshold, BiFunction<? super K, ? super V, ? extends U> transformer,
+                           BinaryOperator<U> reducer) {
+        return bulk().mapReduce(parallelismThreshold, transformer, reducer);
+    }
+
+    public Spliterator<KeyValue<K, V>> spliterator() {
+        return bulk().spliterator();
+    }
+
+    public int size() {
+        return (int) count.sum();
+    }
+
+    /**
+     * Number of lock stripes currently in use.
+     */
+    public int getLockCount() {
+        return locks.length;
+    }
+
+    /**
+     * Copies the entries one bucket at a time, holding only that bucket's stripe.
+     * If the table is resized part way through, the copy starts again from the new table.
+     */
+    public Iterator<KeyValue<K, V>> iterator() {
+        List<KeyValue<K, V>> entries = new ArrayList<KeyValue<K, V>>();
+        restart:
+        while (true) {
+            entries.clear();
+            Bucket<K, V>[] b = buckets;
+            for (int i = 0; i < b.length; ++i) {
+                ReentrantLock lock = acquire(b, i);
+                if (lock == null)
+                    continue restart;
+                try {
+                    Iterator<KeyValue<K, V>> iter = b[i].iterator();
+                    while (iter.hasNext())
+                        entries.add(iter.next());
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return entries.iterator();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel (Varghese and Lauck). Time is counted in ticks of tick_nanos, and there
+ * are LEVELS wheels of SLOTS slots each: a slot of level 0 holds the timers due in one tick, a slot of
+ * level 1 those due in the SLOTS ticks after that, and so on. A timer is put in the lowest level whose
+ * slots still reach its deadline, and each time the wheel turns past the start of a slot of a higher
+ * level, that slot's timers are put back in a lower one (they cascade down) until they reach level 0
+ * and fire. Scheduling and cancelling a timer are O(1), and every timer cascades at most LEVELS - 1
+ * times before it fires, however many timers there are.
+ * Timers further off than the wheels reach wait in the furthest slot of the top level and are placed
+ * again when it comes round. A timer never fires before its deadline, and at most one tick after the
+ * first advance() past it.
+ * advance() does not visit every tick it turns past: from each tick it jumps to the next one whose
+ * slot on some level holds timers, looking at up to SLOTS slots per level to find it. Its cost follows
+ * the timers it cascades and fires, not the time elapsed.
+ * The wheel is not thread-safe: ExpiringHash only uses it from its ChangeQueue.
+ */
+final class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    // Number of ticks the wheels reach ahead of current.
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    /**
+     * Something that can be put on the wheel. Its fields belong to the wheel.
+     */
+    static class Timer {
+        // The tick the timer is due in.
+        long deadline;
+        // The slot links, null while the timer is not on the wheel.
+        Timer prev, next;
+
+        boolean isScheduled() {
+            return next != null;
+        }
+    }
+
+    private final long tick_nanos;
+    // A sentinel per slot, heading a circular list of its timers.
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+    // The next tick to fire.
+    private long current;
+    private int size;
+
+    /**
+     * @param tick_nanos - the length of a tick
+     * @param now - the current time, from the same clock that deadlines will be given in
+     */
+    TimingWheel(long tick_nanos, long now) {
+        this.tick_nanos = tick_nanos;
+        this.current = Math.floorDiv(now, tick_nanos);
+        for (Timer[] level : slots) {
+            for (int i = 0; i < SLOTS; ++i) {
+                Timer head = new Timer();
+                head.prev = head;
+                head.next = head;
+                level[i] = head;
+            }
+        }
+    }
+
+    // Schedules t to fire once the time is deadline (nanos), rounded up to a tick.
+    void schedule(Timer t, long deadline) {
+        if (t.isScheduled())
+            cancel(t);
+        t.deadline = -Math.floorDiv(-deadline, tick_nanos);
+        place(t);
+        size++;
+    }
+
+    void cancel(Timer t) {
+        if (!t.isScheduled())
+            return;
+        t.prev.next = t.next;
+        t.next.prev = t.prev;
+        t.prev = null;
+        t.next = null;
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Turns the wheel up to now, handing every timer that falls due to expired. The timer is off the
+     * wheel by then, so expired may schedule it again.
+     */
+    void advance(long now, Consumer<? super Timer> expired) {
+        long target = Math.floorDiv(now, tick_nanos);
+        while (current <= target) {
+            if (size == 0) {
+                // nothing to cascade or fire, the wheels can jump straight to target
+                current = target + 1;
+                return;
+            }
+            // top down, so timers that cascade into a slot that also starts now cascade again
+            for (int level = LEVELS - 1; level > 0; --level) {
+                if ((current & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    for (Timer t = takeSlot(level, current); t != null; ) {
+                        Timer next = t.next;
+                        t.next = null;
+                        place(t);
+                        t = next;
+                    }
+                }
+            }
+            for (Timer t = takeSlot(0, current); t != null; ) {
+                Timer next = t.next;
+                t.next = null;
+                if (t.deadline <= current) {
+                    size--;
+                    expired.accept(t);
+                } else {
+                    // a level 0 slot is shared by ticks SLOTS apart
+                    place(t);
+                }
+                t = next;
+            }
+            current = nextBusyTick(target + 1);
+        }
+    }
+
+    /**
+     * The first tick after current at which a slot that holds timers is due to be emptied, or limit if
+     * that comes first. The ticks in between have nothing to cascade or fire, so advance() can skip them.
+     */
+    private long nextBusyTick(long limit) {
+        long busy = limit;
+        for (int level = 0; level < LEVELS; ++level) {
+            int shift = SLOT_BITS * level;
+            // the slots of a level are emptied at the ticks that start them
+            long tick = ((current >> shift) + 1) << shift;
+            for (int i = 0; i < SLOTS && tick < busy; ++i, tick += 1L << shift) {
+                Timer head = slotOf(level, tick);
+                if (head.next != head) {
+                    busy = tick;
+                    break;
+                }
+            }
+        }
+        return busy;
+    }
+
+    // The lowest level whose slots reach t.deadline; overdue timers go in the current level 0 slot.
+    private void place(Timer t) {
+        long when = Math.max(t.deadline, current);
+        long delta = when - current;
+        if (delta >= SPAN) {
+            when = current + SPAN - 1;
+            delta = SPAN - 1;
+        }
+        int level = 0;
+        while (delta >= (1L << (SLOT_BITS * (level + 1))))
+            level++;
+        Timer head = slotOf(level, when);
+        t.next = head;
+        t.prev = head.prev;
+        head.prev.next = t;
+        head.prev = t;
+    }
+
+    // Empties the slot of level that tick falls in, returning its timers linked by next only.
+    private Timer takeSlot(int level, long tick) {
+        Timer head = slotOf(level, tick);
+        if (head.next == head)
+            return null;
+        Timer first = head.next;
+        head.prev.next = null;
+        head.prev = head;
+        head.next = head;
+        for (Timer t = first; t != null; t = t.next)
+            t.prev = null;
+        return first;
+    }
+
+    // The sentinel of the slot of level that tick falls in.
+    private Timer slotOf(int level, long tick) {
+        return slots[level][(int) (tick >> (SLOT_BITS * level)) & SLOT_MASK];
+    }
+}
@@ -0,0 +1,186 @@
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+
+/**
+ * A Chain that starts out as the Q5c lazy Chain and turns into a concurrent skip list (keyed by hash
+ * code, like the chains) once it holds more than TREEIFY_THRESHOLD entries, so a bucket that many keys
+ * hash into costs O(log n) per operation instead of O(n). It turns back into a lazy Chain when it
+ * drops below UNTREEIFY_THRESHOLD entries; the gap between the two stops a chain at the threshold from
+ * converting back and forth.
+ * add() and remove() hold the read lock of the chain, so they run concurrently with each other, and
+ * a conversion holds the write lock while it copies the entries. get() takes no lock: the chain it
+ * reads is only published once it holds every entry.
+ */
+class TreeifyingChain<K, V> implements Bucket<K, V> {
+    static final int TREEIFY_THRESHOLD = 8;
+    static final int UNTREEIFY_THRESHOLD = 6;
+
+    private final LongAdder counter;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    /**
+     * Number of entries in this chain, kept so that the thresholds can be checked without a traversal.
+     */
+    private final AtomicInteger length = new AtomicInteger();
+    /**
+     * In tree mode tree is set and list is left as it was when the chain converted, so a get() that
+     * read tree just before it was published can still read list.
+     */
+    private volatile LazyChain<K, V> list;
+    private volatile ConcurrentSkipListMap<Integer, KeyValue<K, V>> tree;
+
+    public TreeifyingChain() {
+        this(new LongAdder());
+    }
+
+    public TreeifyingChain(LongAdder counter) {
+        this.counter = counter;
+        list = new LazyChain<K, V>(counter);
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        boolean added;
+        lock.readLock().lock();
+        try {
+            ConcurrentSkipListMap<Integer, KeyValue<K, V>> t = tree;
+            if (t != null) {
+                added = t.putIfAbsent(key.hashCode(), new KeyValue<K, V>(key, value)) == null;
+                if (added)
+                    counter.increment();
+            } else {
+                added = list.add(key, value);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (added && length.incrementAndGet() > TREEIFY_THRESHOLD && tree == null)
+            treeify();
+        return added;
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        ConcurrentSkipListMap<Integer, KeyValue<K, V>> t = tree;
+        if (t != null) {
+            KeyValue<K, V> kv = t.get(key.hashCode());
+            return kv == null ? null : kv.value;
+        }
+        return list.get(key);
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        boolean removed;
+        lock.readLock().lock();
+        try {
+            ConcurrentSkipListMap<Integer, KeyValue<K, V>> t = tree;
+            if (t != null) {
+                removed = t.remove(key.hashCode()) != null;
+                if (removed)
+                    counter.decrement();
+            } else {
+                removed = list.remove(key);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (removed && length.decrementAndGet() < UNTREEIFY_THRESHOLD && tree != null)
+            untreeify();
+        return removed;
+    }
+
+    // Find key once and apply remapping to its value, under the read lock like add() and remove().
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        // whether the key was present when the remapping that took effect was applied
+        boolean[] present = {false};
+        BiFunction<K, V, V> tracked = (k, old) -> {
+            present[0] = old != null;
+            return remapping.apply(k, old);
+        };
+        V value;
+        lock.readLock().lock();
+        try {
+            ConcurrentSkipListMap<Integer, KeyValue<K, V>> t = tree;
+            if (t != null) {
+                KeyValue<K, V> kv = t.compute(key.hashCode(), (h, old) -> {
+                    V v = tracked.apply(key, old == null ? null : old.value);
+                    return v == null ? null : new KeyValue<K, V>(old == null ? key : old.key, v);
+                });
+                value = kv == null ? null : kv.value;
+                if (present[0] != (value != null))
+                    counter.add(present[0] ? -1 : 1);
+            } else {
+                value = list.compute(key, tracked);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (!present[0] && value != null && length.incrementAndGet() > TREEIFY_THRESHOLD && tree == null)
+            treeify();
+        else if (present[0] && value == null && length.decrementAndGet() < UNTREEIFY_THRESHOLD && tree != null)
+            untreeify();
+        return value;
+    }
+
+    private void treeify() {
+        lock.writeLock().lock();
+        try {
+            if (tree != null || length.get() <= TREEIFY_THRESHOLD)
+                return;
+            ConcurrentSkipListMap<Integer, KeyValue<K, V>> t = new ConcurrentSkipListMap<Integer, KeyValue<K, V>>();
+            Iterator<KeyValue<K, V>> iter = list.iterator();
+            while (iter.hasNext()) {
+                KeyValue<K, V> kv = iter.next();
+                t.put(kv.key.hashCode(), kv);
+            }
+            tree = t;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void untreeify() {
+        lock.writeLock().lock();
+        try {
+            ConcurrentSkipListMap<Integer, KeyValue<K, V>> t = tree;
+            if (t == null || length.get() >= UNTREEIFY_THRESHOLD)
+                return;
+            LazyChain<K, V> l = new LazyChain<K, V>(counter);
+            for (KeyValue<K, V> kv : t.values())
+                l.add(kv.key, kv.value);
+            // the entries were counted again when they were added to the new list
+            counter.add(-t.size());
+            // list first, so a get() that sees tree == null reads the new list
+            list = l;
+            tree = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        ConcurrentSkipListMap<Integer, KeyValue<K, V>> t = tree;
+        return t != null ? t.size() : list.size();
+    }
+
+    public Iterator<KeyValue<K, V>> iterator() {
+        ConcurrentSkipListMap<Integer, KeyValue<K, V>> t = tree;
+        if (t == null)
+            return list.iterator();
+        final Iterator<KeyValue<K, V>> iter = t.values().iterator();
+        return new Iterator<KeyValue<K, V>>() {
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            public KeyValue<K, V> next() {
+                KeyValue<K, V> kv = iter.next();
+                return new KeyValue<K, V>(kv.key, kv.value);
+            }
+        };
+    }
+}
@@ -0,0 +1,233 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * The Q5b optimistic Chain with validation in constant time. Q5b validates by walking the chain again
+ * from head to check that pred is still reachable; here every node carries a deletion mark and a
+ * version, so validation only looks at the two nodes involved.
+ * add() and remove() still traverse without locking and then lock pred and curr, but validate with
+ * !pred.marked && !curr.marked && pred.next == curr: an unmarked node is always reachable.
+ * A node's version is odd while its lock holder is changing its next or marking it, and is incremented
+ * again when it is done (a per-node seqlock), so get() does not lock at all: it remembers the version of
+ * pred before reading pred.next, and the result is valid if that version is even and unchanged after.
+ * Values are final, so compute() replaces a node with a new one, marking the old one as removed.
+ */
+class VersionedOptimisticChain<K, V> implements Bucket<K, V> {
+    private final Node head;
+    private final LongAdder counter;
+
+    // This iterator is only required for Q6 and
+    // may otherwise be ignored.
+    public class ChainIterator implements java.util.Iterator<KeyValue<K, V>> {
+        // Read one node ahead, so that a remove() between hasNext() and next() cannot leave next()
+        // returning the tail sentinel.
+        private Node next;
+
+        public ChainIterator() {
+            next = head.next;
+        }
+
+        public boolean hasNext() {
+            return next != null
+                    && next.hash != Integer.MAX_VALUE;
+        }
+
+        public KeyValue<K, V> next() {
+            Node cur = next;
+            next = cur.next;
+            return new KeyValue<K, V>(cur.key, cur.value);
+        }
+    }
+
+    public java.util.Iterator<KeyValue<K, V>> iterator() {
+        return new ChainIterator();
+    }
+
+    private class Node extends NodeLock {
+        final int hash;
+        final K key;
+        final V value;
+        volatile boolean marked;
+        volatile Node next;
+        /**
+         * Only written by the thread holding the node's lock.
+         */
+        volatile int version;
+
+        public Node(int hash) {
+            this(hash, null, null);
+        }
+
+        public Node(int hash, K key, V value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        // Called by the lock holder before and after it changes next or marked.
+        void beginWrite() {
+            version++;
+        }
+        void endWrite() {
+            version++;
+        }
+    }
+
+    public VersionedOptimisticChain() {
+        this(new LongAdder());
+    }
+
+    public VersionedOptimisticChain(LongAdder counter) {
+        this.counter = counter;
+        Node tail = new Node(Integer.MAX_VALUE);
+        head = new Node(Integer.MIN_VALUE);
+        head.next = tail;
+    }
+
+    // Insert value for key.
+    public boolean add(K key, V value) {
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            pred.lock();
+            curr.lock();
+            try {
+                if (validate(pred, curr)) {
+                    if (curr.hash == hash) {
+                        return false;
+                    } else {
+                        Node node = new Node(hash, key, value);
+                        node.next = curr;
+                        pred.beginWrite();
+                        pred.next = node;
+                        pred.endWrite();
+                        counter.increment();
+                        return true;
+                    }
+                }
+            } finally {
+                pred.unlock(); curr.unlock();
+            }
+        }
+    }
+
+    // Lookup value for key
+    public V get(K key) {
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            int version = pred.version;
+            Node curr = pred.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                version = pred.version;
+                curr = pred.next;
+            }
+            V value = curr.hash == hash ? curr.value : null;
+            // pred was unmarked, so reachable, and pointed to curr when its version was read
+            if ((version & 1) == 0 && pred.version == version && !pred.marked) {
+                return value;
+            }
+        }
+    }
+
+    // Remove key/value pair
+    public boolean remove(K key) {
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            pred.lock(); curr.lock();
+            try {
+                if (validate(pred, curr)) {
+                    if (curr.hash == hash) {
+                        curr.beginWrite();
+                        curr.marked = true;
+                        curr.endWrite();
+                        pred.beginWrite();
+                        pred.next = curr.next;
+                        pred.endWrite();
+                        counter.decrement();
+                        return true;
+                    } else {
+                        return false;
+                    }
+                }
+            } finally {
+                pred.unlock(); curr.unlock();
+            }
+        }
+    }
+
+    // Find key once and apply remapping to its value once pred and curr are locked and validated.
+    public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remapping) {
+        int hash = key.hashCode();
+        while (true) {
+            Node pred = head;
+            Node curr = head.next;
+            while (curr.hash < hash) {
+                pred = curr;
+                curr = curr.next;
+            }
+            pred.lock(); curr.lock();
+            try {
+                if (validate(pred, curr)) {
+                    boolean present = curr.hash == hash;
+                    V value = remapping.apply(key, present ? curr.value : null);
+                    if (present ? value == curr.value : value == null) {
+                        return value;
+                    }
+                    Node next = present ? curr.next : curr;
+                    if (value != null) {
+                        Node node = new Node(hash, present ? curr.key : key, value);
+                        node.next = next;
+                        next = node;
+                    }
+                    if (present) {
+                        curr.beginWrite();
+                        curr.marked = true;
+                        curr.endWrite();
+                    }
+                    pred.beginWrite();
+                    pred.next = next;
+                    pred.endWrite();
+                    if (!present) {
+                        counter.increment();
+                    } else if (value == null) {
+                        counter.decrement();
+                    }
+                    return value;
+                }
+            } finally {
+                pred.unlock(); curr.unlock();
+            }
+        }
+    }
+
+    /**
+     * Constant time: both nodes are locked, so neither can be marked or relinked while this runs.
+     */
+    private boolean validate(Node pred, Node curr) {
+        return !pred.marked && !curr.marked && pred.next == curr;
+    }
+
+    public int size() {
+        int size = 0;
+
+        Node n = head.next;
+        while (n.next != null) {
+            size++;
+            n = n.next;
+        }
+        return size;
+    }
+}
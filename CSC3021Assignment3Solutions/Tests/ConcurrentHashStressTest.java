@@ -0,0 +1,176 @@
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs every strategy under concurrent add(), remove() and compute() and checks it against a model.
+ * Each writer owns the keys equal to its index modulo WRITERS, so it knows exactly what get() must
+ * return for them after each of its own operations. All writers also count on a few shared keys with
+ * compute(), which is only right if compute() is atomic. The tables start small with the default
+ * ResizePolicy, so they grow while the writers run: RcuHash migrates, SplitOrderedHash splits
+ * buckets, StripedHash refines its locks and CuckooHash relocates entries and grows. A resizer
+ * thread also calls resize() on the strategies that allow it, and a reader keeps iterating, checking
+ * that no entry comes back twice and none is half built. Once everything has stopped, get(), size(),
+ * iterator() and stream() must all agree with the model.
+ */
+public class ConcurrentHashStressTest {
+    private static final int WRITERS = 3;
+    private static final int KEYS_PER_WRITER = 1000;
+    private static final int OPERATIONS = 60000;
+    // Keys every writer counts on, negative so they are not owned by any writer.
+    private static final int SHARED_KEYS = 8;
+
+    public static void main(String[] args) throws InterruptedException {
+        for (HashFactory.Strategy strategy : HashFactory.Strategy.values())
+            run(strategy);
+        System.out.println("ok");
+    }
+
+    private static void run(HashFactory.Strategy strategy) throws InterruptedException {
+        ConcurrentHash<Integer, Integer> hash = HashFactory.create(strategy, 16, ResizePolicy.DEFAULT);
+        Throwable[] failure = new Throwable[1];
+        AtomicBoolean writing = new AtomicBoolean(true);
+        @SuppressWarnings("unchecked")
+        Map<Integer, Integer>[] models = new Map[WRITERS];
+        long[] increments = new long[WRITERS];
+
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; ++w) {
+            int id = w;
+            models[id] = new HashMap<Integer, Integer>();
+            writers[id] = thread(failure, () -> increments[id] = write(strategy, hash, id, models[id]));
+        }
+        Thread reader = thread(failure, () -> {
+            while (writing.get())
+                checkIteration(strategy, hash);
+        });
+        Thread resizer = thread(failure, () -> {
+            Random random = new Random(3);
+            while (writing.get() && strategy.supportsConcurrentResize()) {
+                hash.resize(8 << random.nextInt(10));
+                Thread.yield();
+            }
+        });
+        for (Thread t : writers)
+            t.start();
+        reader.start();
+        resizer.start();
+        for (Thread t : writers)
+            t.join();
+        writing.set(false);
+        reader.join();
+        resizer.join();
+        if (failure[0] != null) {
+            System.out.println(strategy.getName() + " failed");
+            failure[0].printStackTrace();
+            System.exit(1);
+        }
+
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (Map<Integer, Integer> model : models)
+            expected.putAll(model);
+        long counted = 0;
+        for (int key = 1; key <= SHARED_KEYS; ++key) {
+            Integer count = hash.get(-key);
+            counted += count == null ? 0 : count;
+            if (count != null)
+                expected.put(-key, count);
+        }
+        long total = 0;
+        for (long n : increments)
+            total += n;
+        check(counted == total, strategy, "the shared keys counted " + counted + " of " + total + " increments");
+        for (Map.Entry<Integer, Integer> e : expected.entrySet())
+            check(e.getValue().equals(hash.get(e.getKey())), strategy, "get(" + e.getKey() + ") returned "
+                    + hash.get(e.getKey()) + " instead of " + e.getValue());
+        check(hash.size() == expected.size(), strategy, "size() is " + hash.size() + ", expected " + expected.size());
+        Map<Integer, Integer> iterated = new HashMap<Integer, Integer>();
+        for (KeyValue<Integer, Integer> kv : hash)
+            check(iterated.put(kv.key, kv.value) == null, strategy, "iterator() returned " + kv.key + " twice");
+        check(iterated.equals(expected), strategy, "iterator() does not return the entries of the model");
+        long streamed = hash.stream().count();
+        check(streamed == expected.size(), strategy, "stream() counted " + streamed + ", expected " + expected.size());
+    }
+
+    /**
+     * A mix of add(), remove() and compute() on the keys of writer id, each followed by get(), and of
+     * increments of the shared keys. Returns the number of increments.
+     */
+    private static long write(HashFactory.Strategy strategy, ConcurrentHash<Integer, Integer> hash, int id,
+                              Map<Integer, Integer> model) {
+        Random random = new Random(id);
+        long increments = 0;
+        for (int i = 0; i < OPERATIONS; ++i) {
+            int op = random.nextInt(10);
+            if (op == 0) {
+                hash.compute(-1 - random.nextInt(SHARED_KEYS), (k, v) -> v == null ? 1 : v + 1);
+                increments++;
+                continue;
+            }
+            int key = random.nextInt(KEYS_PER_WRITER) * WRITERS + id;
+            int value = random.nextInt(1000);
+            if (op < 5) {
+                boolean added = hash.add(key, value);
+                check(added == !model.containsKey(key), strategy, "add(" + key + ") returned " + added);
+                // some strategies replace the value of a present key, others keep it
+                if (added || Integer.valueOf(value).equals(hash.get(key)))
+                    model.put(key, value);
+            } else if (op < 8) {
+                boolean removed = hash.remove(key);
+                check(removed == model.containsKey(key), strategy, "remove(" + key + ") returned " + removed);
+                model.remove(key);
+            } else {
+                // increments the value, or removes the entry if it is even
+                Integer result = hash.compute(key,
+                        (k, v) -> v == null ? Integer.valueOf(value) : v % 2 == 0 ? null : Integer.valueOf(v + 1));
+                Integer old = model.get(key);
+                Integer expected = old == null ? Integer.valueOf(value) : old % 2 == 0 ? null : old + 1;
+                check(result == null ? expected == null : result.equals(expected), strategy,
+                        "compute(" + key + ") returned " + result + " instead of " + expected);
+                if (expected == null)
+                    model.remove(key);
+                else
+                    model.put(key, expected);
+            }
+            Integer found = hash.get(key);
+            check(found == null ? !model.containsKey(key) : found.equals(model.get(key)), strategy,
+                    "get(" + key + ") returned " + found + " instead of " + model.get(key));
+        }
+        return increments;
+    }
+
+    // One pass of the iterator and one of a stream while the writers run: every entry complete, no key twice.
+    private static void checkIteration(HashFactory.Strategy strategy, ConcurrentHash<Integer, Integer> hash) {
+        Set<Integer> seen = new HashSet<Integer>();
+        for (Iterator<KeyValue<Integer, Integer>> it = hash.iterator(); it.hasNext(); ) {
+            KeyValue<Integer, Integer> kv = it.next();
+            check(kv.key != null && kv.value != null, strategy, "iterator() returned a null key or value");
+            check(seen.add(kv.key), strategy, "iterator() returned " + kv.key + " twice");
+        }
+        // the spliterator reports NONNULL
+        check(hash.stream().allMatch(kv -> kv != null && kv.key != null && kv.value != null), strategy,
+                "stream() returned a null entry, key or value");
+    }
+
+    private static Thread thread(Throwable[] failure, Runnable body) {
+        return new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable t) {
+                synchronized (failure) {
+                    if (failure[0] == null)
+                        failure[0] = t;
+                }
+            }
+        });
+    }
+
+    private static void check(boolean condition, HashFactory.Strategy strategy, String message) {
+        if (!condition)
+            throw new AssertionError(strategy.getName() + ": " + message);
+    }
+}
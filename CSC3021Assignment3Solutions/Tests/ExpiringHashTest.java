@@ -0,0 +1,90 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives ExpiringHash over every strategy with a clock the test turns by hand. Times to live and clock
+ * steps are whole milliseconds, the tick of the timing wheel, so an entry is due on exactly the tick it
+ * expires. Checks that get() finds every entry until its time to live has passed, that expire() alone
+ * reclaims each entry once it has (and none before), and that compute() and add() replace expired
+ * entries and restart the time to live only when they write a new value.
+ */
+public class ExpiringHashTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int KEYS = 2000;
+
+    public static void main(String[] args) {
+        for (HashFactory.Strategy strategy : HashFactory.Strategy.values()) {
+            neverEarlyAndReclaimed(strategy);
+            replaceAndRenew(strategy);
+        }
+        System.out.println("ok");
+    }
+
+    private static void neverEarlyAndReclaimed(HashFactory.Strategy strategy) {
+        AtomicLong clock = new AtomicLong(5000 * MS);
+        ExpiringHash<Integer, Integer> hash = new ExpiringHash<Integer, Integer>(strategy, 16, 1, TimeUnit.SECONDS,
+                clock::get);
+        Random random = new Random(11);
+        Map<Integer, Long> expires = new HashMap<Integer, Long>();
+        for (int key = 0; key < KEYS; ++key) {
+            long ttl = 1 + random.nextInt(1 << random.nextInt(20));
+            check(hash.add(key, key, ttl, TimeUnit.MILLISECONDS), strategy + ": add(" + key + ") failed");
+            expires.put(key, clock.get() + ttl * MS);
+        }
+        long expired = 0;
+        while (!expires.isEmpty()) {
+            clock.addAndGet((1 + random.nextInt(1 << random.nextInt(18))) * MS);
+            long now = clock.get();
+            // every live key is still there; expired keys are left to expire()
+            for (Map.Entry<Integer, Long> e : expires.entrySet()) {
+                if (e.getValue() > now) {
+                    Integer value = hash.get(e.getKey());
+                    check(value != null && value.equals(e.getKey()),
+                            strategy + ": key " + e.getKey() + " expired early, get() returned " + value);
+                }
+            }
+            hash.expire();
+            expires.values().removeIf(deadline -> deadline <= now);
+            expired = KEYS - expires.size();
+            check(hash.size() == expires.size(),
+                    strategy + ": size() is " + hash.size() + " after expire(), expected " + expires.size());
+        }
+        check(hash.expirationCount() == expired,
+                strategy + ": expirationCount() is " + hash.expirationCount() + ", expected " + expired);
+    }
+
+    private static void replaceAndRenew(HashFactory.Strategy strategy) {
+        AtomicLong clock = new AtomicLong(0);
+        ExpiringHash<Integer, Integer> hash = new ExpiringHash<Integer, Integer>(strategy, 16, 10, TimeUnit.SECONDS,
+                clock::get);
+        hash.add(1, 1, 5, TimeUnit.SECONDS);
+        hash.add(2, 2, 5, TimeUnit.SECONDS);
+        hash.add(3, 3, 5, TimeUnit.SECONDS);
+        check(!hash.add(1, 10), strategy + ": add() replaced a live entry");
+        clock.set(TimeUnit.SECONDS.toNanos(4));
+        // the same value keeps the deadline, a new one lives for the default 10 seconds from now
+        check(hash.compute(1, (k, v) -> v) == 1, strategy + ": compute() lost key 1");
+        check(hash.compute(2, (k, v) -> v + 1) == 3, strategy + ": compute() did not write key 2");
+        clock.set(TimeUnit.SECONDS.toNanos(5));
+        hash.expire();
+        check(hash.get(1) == null, strategy + ": compute() returning the same value renewed key 1");
+        check(hash.get(2) == 3, strategy + ": key 2 expired although compute() wrote it");
+        // an expired entry counts as absent
+        check(hash.compute(3, (k, v) -> v == null ? 30 : -1) == 30, strategy + ": compute() saw an expired value");
+        check(hash.add(1, 11), strategy + ": add() did not replace an expired entry");
+        clock.set(TimeUnit.SECONDS.toNanos(14) - 1);
+        hash.expire();
+        check(hash.size() == 3, strategy + ": size() is " + hash.size() + " before any deadline, expected 3");
+        clock.set(TimeUnit.SECONDS.toNanos(15));
+        hash.expire();
+        check(hash.size() == 0, strategy + ": size() is " + hash.size() + " after every deadline, expected 0");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
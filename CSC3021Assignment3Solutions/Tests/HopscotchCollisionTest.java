@@ -0,0 +1,71 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Gives a HopscotchHash far more keys with one hash code than a neighbourhood has slots, mixed with
+ * ordinary keys, and checks every operation against a HashMap. Growing the table cannot separate the
+ * colliding keys, so all but HOP_RANGE of them have to live in the overflow list; explicit resizes
+ * in between check that the overflow entries survive being placed again.
+ */
+public class HopscotchCollisionTest {
+    private static final int COLLIDING_KEYS = 200;
+    private static final int ORDINARY_KEYS = 2000;
+    private static final int OPERATIONS = 200000;
+
+    // Equal only to a key with the same id, but every key has the same hash code.
+    private static final class Collider {
+        final int id;
+
+        Collider(int id) {
+            this.id = id;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Collider && ((Collider) o).id == id;
+        }
+
+        public int hashCode() {
+            return 42;
+        }
+    }
+
+    public static void main(String[] args) {
+        HopscotchHash<Object, Integer> hash = new HopscotchHash<Object, Integer>(16);
+        Map<Object, Integer> model = new HashMap<Object, Integer>();
+        Random random = new Random(5);
+        for (int i = 0; i < COLLIDING_KEYS; ++i)
+            check(hash.add(new Collider(i), i) && model.put(new Collider(i), i) == null, "add(collider " + i + ") failed");
+        for (int i = 0; i < OPERATIONS; ++i) {
+            Object key = random.nextInt(4) == 0 ? new Collider(random.nextInt(COLLIDING_KEYS))
+                    : Integer.valueOf(random.nextInt(ORDINARY_KEYS));
+            int value = random.nextInt(1000);
+            int op = random.nextInt(10);
+            if (op < 4) {
+                check(hash.add(key, value) == (model.putIfAbsent(key, value) == null), "add() disagrees with the model");
+            } else if (op < 7) {
+                check(hash.remove(key) == (model.remove(key) != null), "remove() disagrees with the model");
+            } else if (op < 9) {
+                // increments the value, or removes the entry if it is even
+                Integer result = hash.compute(key, (k, v) -> v == null ? Integer.valueOf(value) : v % 2 == 0 ? null : Integer.valueOf(v + 1));
+                Integer expected = model.compute(key, (k, v) -> v == null ? Integer.valueOf(value) : v % 2 == 0 ? null : Integer.valueOf(v + 1));
+                check(result == null ? expected == null : result.equals(expected), "compute() disagrees with the model");
+            } else if (random.nextInt(1000) == 0) {
+                hash.resize(8 << random.nextInt(10));
+            }
+            Integer found = hash.get(key);
+            check(found == null ? !model.containsKey(key) : found.equals(model.get(key)), "get() disagrees with the model");
+        }
+        check(hash.size() == model.size(), "size() is " + hash.size() + ", expected " + model.size());
+        Map<Object, Integer> iterated = new HashMap<Object, Integer>();
+        for (KeyValue<Object, Integer> kv : hash)
+            check(iterated.put(kv.key, kv.value) == null, "iterator() returned a key twice");
+        check(iterated.equals(model), "iterator() does not return the entries of the model");
+        System.out.println("ok");
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Two threads add and remove keys whose neighbourhoods meet at the boundary between the first two
+ * lock segments of a HopscotchHash: one thread uses keys homed at the end of segment 0, so some of its
+ * entries spill into segment 1, and the other uses keys homed at the start of segment 1. remove() only
+ * locks the home segment, so a slot it clears in segment 1 can be taken at the same moment by an add()
+ * holding segment 1. Each thread checks that every key it has added is there with its value until
+ * it removes it again.
+ */
+public class HopscotchSegmentTest {
+    // Home buckets of a table created with 128 buckets; segments are 64 slots long.
+    private static final int CAPACITY = 128;
+    private static final int KEYS_PER_THREAD = 8;
+    private static final int ROUNDS = 200000;
+
+    public static void main(String[] args) throws InterruptedException {
+        HopscotchHash<Integer, Integer> hash = new HopscotchHash<Integer, Integer>(CAPACITY);
+        int[] low = keysHomedAt(62, 63);
+        int[] high = keysHomedAt(64, 65);
+        Throwable[] failure = new Throwable[1];
+        Thread a = worker(hash, low, failure);
+        Thread b = worker(hash, high, failure);
+        a.start();
+        b.start();
+        a.join();
+        b.join();
+        if (failure[0] != null) {
+            failure[0].printStackTrace();
+            System.exit(1);
+        }
+        if (hash.getArraySize() != CAPACITY)
+            System.out.println("warning: the table grew to " + hash.getArraySize() + ", the keys no longer meet at a segment boundary");
+        System.out.println("ok");
+    }
+
+    private static Thread worker(HopscotchHash<Integer, Integer> hash, int[] keys, Throwable[] failure) {
+        return new Thread(() -> {
+            try {
+                for (int round = 0; round < ROUNDS; ++round) {
+                    int value = round;
+                    for (int key : keys) {
+                        if (!hash.add(key, value))
+                            throw new AssertionError("add(" + key + ") found the key although it was removed");
+                    }
+                    for (int key : keys) {
+                        Integer found = hash.get(key);
+                        if (found == null || found != value)
+                            throw new AssertionError("get(" + key + ") returned " + found + " instead of " + value);
+                    }
+                    for (int key : keys) {
+                        if (!hash.remove(key))
+                            throw new AssertionError("remove(" + key + ") did not find the key");
+                    }
+                }
+            } catch (Throwable t) {
+                synchronized (failure) {
+                    if (failure[0] == null)
+                        failure[0] = t;
+                }
+            }
+        });
+    }
+
+    // KEYS_PER_THREAD / 2 Integer keys homed at each of the two home buckets.
+    private static int[] keysHomedAt(int first, int second) {
+        int[] keys = new int[KEYS_PER_THREAD];
+        int n = 0, m = 0;
+        for (int i = 0; n + m < KEYS_PER_THREAD; ++i) {
+            int home = spread(i) % CAPACITY;
+            if (home == first && n < KEYS_PER_THREAD / 2)
+                keys[n++] = i;
+            else if (home == second && m < KEYS_PER_THREAD / 2)
+                keys[KEYS_PER_THREAD / 2 + m++] = i;
+        }
+        return keys;
+    }
+
+    // The same as HopscotchHash.spread().
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h & 0x7FFFFFFF;
+    }
+}
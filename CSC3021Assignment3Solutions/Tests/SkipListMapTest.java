@@ -0,0 +1,125 @@
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks the ordered operations of SkipListMap while other threads change it. The even keys are added
+ * first and never removed; writers keep adding and removing the odd keys. Every entry maps its key to
+ * itself. Readers check that floor() and ceiling() return a key on the right side of the one asked
+ * for and no further than the nearest even key, and that range() returns its keys strictly increasing,
+ * within its bounds and including every even key in them. Once the writers stop, iterator() must
+ * return exactly the entries of a TreeMap that saw the same operations, in the same order.
+ */
+public class SkipListMapTest {
+    private static final int EVEN_KEYS = 2000;
+    private static final int MAX_KEY = 2 * EVEN_KEYS;
+    private static final int WRITERS = 2;
+    private static final int READERS = 2;
+    private static final int OPERATIONS = 100000;
+
+    public static void main(String[] args) throws InterruptedException {
+        SkipListMap<Integer, Integer> map = new SkipListMap<Integer, Integer>();
+        for (int key = 0; key < MAX_KEY; key += 2)
+            map.add(key, key);
+        Throwable[] failure = new Throwable[1];
+        AtomicBoolean writing = new AtomicBoolean(true);
+        @SuppressWarnings("unchecked")
+        TreeMap<Integer, Integer>[] models = new TreeMap[WRITERS];
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; ++w) {
+            int id = w;
+            models[id] = new TreeMap<Integer, Integer>();
+            writers[id] = thread(failure, () -> write(map, id, models[id]));
+        }
+        Thread[] readers = new Thread[READERS];
+        for (int r = 0; r < READERS; ++r) {
+            Random random = new Random(100 + r);
+            readers[r] = thread(failure, () -> {
+                while (writing.get())
+                    read(map, random);
+            });
+        }
+        for (Thread t : writers)
+            t.start();
+        for (Thread t : readers)
+            t.start();
+        for (Thread t : writers)
+            t.join();
+        writing.set(false);
+        for (Thread t : readers)
+            t.join();
+        if (failure[0] != null) {
+            failure[0].printStackTrace();
+            System.exit(1);
+        }
+
+        TreeMap<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+        for (int key = 0; key < MAX_KEY; key += 2)
+            expected.put(key, key);
+        for (TreeMap<Integer, Integer> model : models)
+            expected.putAll(model);
+        Iterator<Integer> keys = expected.keySet().iterator();
+        for (KeyValue<Integer, Integer> kv : map)
+            check(keys.hasNext() && kv.key.equals(keys.next()), "iterator() returned " + kv.key + " out of place");
+        check(!keys.hasNext(), "iterator() stopped before the end of the model");
+        check(map.size() == expected.size(), "size() is " + map.size() + ", expected " + expected.size());
+        System.out.println("ok");
+    }
+
+    // Adds and removes the odd keys that are id modulo WRITERS (as odd numbers go).
+    private static void write(SkipListMap<Integer, Integer> map, int id, TreeMap<Integer, Integer> model) {
+        Random random = new Random(id);
+        for (int i = 0; i < OPERATIONS; ++i) {
+            int key = 2 * (random.nextInt(EVEN_KEYS / WRITERS) * WRITERS + id) + 1;
+            if (random.nextBoolean()) {
+                check(map.add(key, key) == (model.put(key, key) == null), "add(" + key + ") disagrees with the model");
+            } else {
+                check(map.remove(key) == (model.remove(key) != null), "remove(" + key + ") disagrees with the model");
+            }
+        }
+    }
+
+    private static void read(SkipListMap<Integer, Integer> map, Random random) {
+        int key = random.nextInt(MAX_KEY - 1);
+        KeyValue<Integer, Integer> floor = map.floor(key);
+        check(floor != null && floor.key <= key && floor.key >= key - key % 2 && floor.value.equals(floor.key),
+                "floor(" + key + ") returned " + (floor == null ? null : floor.key));
+        KeyValue<Integer, Integer> ceiling = map.ceiling(key);
+        check(ceiling != null && ceiling.key >= key && ceiling.key <= key + key % 2 && ceiling.value.equals(ceiling.key),
+                "ceiling(" + key + ") returned " + (ceiling == null ? null : ceiling.key));
+
+        int from = random.nextInt(MAX_KEY), to = from + random.nextInt(64);
+        int previous = from - 1;
+        // the first even key at or after from
+        int nextEven = from + from % 2;
+        for (Iterator<KeyValue<Integer, Integer>> it = map.range(from, to); it.hasNext(); ) {
+            KeyValue<Integer, Integer> kv = it.next();
+            check(kv.key > previous && kv.key < to, "range(" + from + ", " + to + ") returned " + kv.key
+                    + " after " + previous);
+            check(kv.key <= nextEven || nextEven >= to, "range(" + from + ", " + to + ") skipped " + nextEven);
+            if (kv.key == nextEven)
+                nextEven += 2;
+            previous = kv.key;
+        }
+        check(nextEven >= Math.min(to, MAX_KEY), "range(" + from + ", " + to + ") stopped before " + nextEven);
+    }
+
+    private static Thread thread(Throwable[] failure, Runnable body) {
+        return new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable t) {
+                synchronized (failure) {
+                    if (failure[0] == null)
+                        failure[0] = t;
+                }
+            }
+        });
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks TimingWheel against the rule it promises: after advance(now) every timer whose deadline is
+ * at or before now has fired, and none whose deadline is after now has. The ticks are one nanosecond
+ * long, so deadlines are exact. Covers timers that cascade down from every level, timers further off
+ * than the wheels reach, advance() jumping over long stretches with few timers pending, and a random
+ * mix of schedule(), cancel() and advance() checked against a map of the pending deadlines.
+ */
+public class TimingWheelTest {
+    // The same as TimingWheel.SPAN: 4 levels of 64 slots.
+    private static final long SPAN = 1L << 24;
+
+    public static void main(String[] args) {
+        cascade();
+        beyondSpan();
+        longJumps();
+        randomAgainstModel();
+        System.out.println("ok");
+    }
+
+    // Timers just before, at and after the start of a slot of each level fire on exactly their tick.
+    private static void cascade() {
+        long start = 1000;
+        Wheel w = new Wheel(start);
+        List<Long> deadlines = new ArrayList<Long>();
+        for (int level = 1; level < 4; ++level) {
+            long slot = 1L << (6 * level);
+            for (long d : new long[] { slot - 1, slot, slot + 1, 2 * slot + 3 })
+                deadlines.add(start + d);
+        }
+        deadlines.add(start + SPAN - 1);
+        deadlines.sort(null);
+        for (long d : deadlines)
+            w.schedule(d);
+        for (long d : deadlines) {
+            w.advance(d - 1);
+            w.advance(d);
+        }
+        check(w.wheel.size() == 0, "timers left on the wheel: " + w.wheel.size());
+    }
+
+    // Deadlines past SPAN wait on the top level and are placed again, without firing early.
+    private static void beyondSpan() {
+        Wheel w = new Wheel(0);
+        long[] deadlines = { SPAN, SPAN + 5, 3 * SPAN + 17, 10 * SPAN - 1 };
+        for (long d : deadlines)
+            w.schedule(d);
+        long now = 0;
+        for (long d : deadlines) {
+            while (now < d - 1) {
+                now = Math.min(now + SPAN / 3, d - 1);
+                w.advance(now);
+            }
+            w.advance(d);
+            now = d;
+        }
+        check(w.wheel.size() == 0, "timers left on the wheel: " + w.wheel.size());
+    }
+
+    /**
+     * A timer 2^40 ticks away, reached in steps of 2^30 ticks. advance() jumps between the slots that
+     * hold timers, so this takes milliseconds; walking every tick would take hours.
+     */
+    private static void longJumps() {
+        Wheel w = new Wheel(0);
+        long deadline = 1L << 40;
+        w.schedule(deadline);
+        w.schedule(deadline + 1);
+        long began = System.nanoTime();
+        for (long now = 0; now < deadline; now += 1L << 30)
+            w.advance(now);
+        w.advance(deadline);
+        w.advance(deadline + 1);
+        long millis = (System.nanoTime() - began) / 1_000_000;
+        check(millis < 10_000, "advancing 2^40 ticks took " + millis + " ms");
+    }
+
+    private static void randomAgainstModel() {
+        Random random = new Random(7);
+        for (int round = 0; round < 20; ++round) {
+            long now = random.nextInt(1 << 20);
+            Wheel w = new Wheel(now);
+            List<TimingWheel.Timer> timers = new ArrayList<TimingWheel.Timer>();
+            for (int step = 0; step < 20000; ++step) {
+                int op = random.nextInt(8);
+                if (op < 3) {
+                    long d = now + (long) Math.pow(2, random.nextDouble() * 27) - 4;
+                    timers.add(w.schedule(d));
+                } else if (op == 3 && !timers.isEmpty()) {
+                    w.cancel(timers.get(random.nextInt(timers.size())));
+                } else {
+                    // mostly small steps, now and then one that crosses several levels
+                    now += random.nextInt(4) == 0 ? random.nextInt(1 << random.nextInt(25)) : random.nextInt(3);
+                    w.advance(now);
+                }
+            }
+        }
+    }
+
+    /**
+     * A wheel and the deadlines of the timers that should still be on it. A timer scheduled for a tick
+     * the wheel has already turned past is due on the next one.
+     */
+    private static final class Wheel {
+        final TimingWheel wheel;
+        final Map<TimingWheel.Timer, Long> pending = new HashMap<TimingWheel.Timer, Long>();
+        // The last tick the wheel has turned past.
+        long turned;
+
+        Wheel(long now) {
+            wheel = new TimingWheel(1, now);
+            turned = now - 1;
+        }
+
+        TimingWheel.Timer schedule(long deadline) {
+            TimingWheel.Timer t = new TimingWheel.Timer();
+            wheel.schedule(t, deadline);
+            pending.put(t, Math.max(deadline, turned + 1));
+            return t;
+        }
+
+        void cancel(TimingWheel.Timer t) {
+            wheel.cancel(t);
+            pending.remove(t);
+        }
+
+        void advance(long now) {
+            wheel.advance(now, t -> {
+                Long deadline = pending.remove(t);
+                check(deadline != null, "a timer fired that was not pending");
+                check(deadline <= now, "a timer due at " + deadline + " fired at " + now);
+            });
+            for (long deadline : pending.values())
+                check(deadline > now, "a timer due at " + deadline + " had not fired at " + now);
+            check(wheel.size() == pending.size(), "size() is " + wheel.size() + ", expected " + pending.size());
+            turned = Math.max(turned, now);
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,15 @@
+#!/bin/sh
+# Compiles the tests together with the Strategies directory and runs each of them in its own JVM.
+# Every test prints ok, or a stack trace and exits with a non-zero status.
+
+cd "$(dirname "$0")/.." || exit 1
+OUT=${OUT:-Tests/out}
+
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -nowarn -d "$OUT" Strategies/*.java Tests/*.java || exit 1
+for test in Tests/*Test.java; do
+    name=$(basename "$test" .java)
+    echo "$name"
+    java -cp "$OUT" "$name" || exit 1
+done